@@ -0,0 +1,136 @@
+package com.nucleus.vecmath.jmh;
+
+import com.nucleus.vecmath.AxisAngle;
+
+/**
+ * Copies of the hot path methods as they were before {@link com.nucleus.vecmath.Instrumentation} was added, used as
+ * baseline when measuring the cost of disabled instrumentation.
+ *
+ */
+final class Baseline {
+
+    private static float[] temp = new float[16];
+    private static float[] result = new float[16];
+
+    private Baseline() {
+    }
+
+    static float dot(float[] vec1, int index1, float[] vec2, int index2) {
+        return vec1[index1++] * vec2[index2++] + vec1[index1++] * vec2[index2++] + vec1[index1] * vec2[index2];
+    }
+
+    static void mul4(float[] m1, float[] m2, float[] destination) {
+        // Concatenate matrix 1 with matrix 2, 4*4
+        destination[0] = (m1[0] * m2[0] + m1[1] * m2[4] + m1[2] * m2[8] + m1[3] * m2[12]);
+        destination[1] = (m1[0] * m2[1] + m1[1] * m2[5] + m1[2] * m2[9] + m1[3] * m2[13]);
+        destination[2] = (m1[0] * m2[2] + m1[1] * m2[6] + m1[2] * m2[10] + m1[3] * m2[14]);
+        destination[3] = (m1[0] * m2[3] + m1[1] * m2[7] + m1[2] * m2[11] + m1[3] * m2[15]);
+
+        destination[4] = (m1[4] * m2[0] + m1[5] * m2[4] + m1[6] * m2[8] + m1[7] * m2[12]);
+        destination[5] = (m1[4] * m2[1] + m1[5] * m2[5] + m1[6] * m2[9] + m1[7] * m2[13]);
+        destination[6] = (m1[4] * m2[2] + m1[5] * m2[6] + m1[6] * m2[10] + m1[7] * m2[14]);
+        destination[7] = (m1[4] * m2[3] + m1[5] * m2[7] + m1[6] * m2[11] + m1[7] * m2[15]);
+
+        destination[8] = (m1[8] * m2[0] + m1[9] * m2[4] + m1[10] * m2[8] + m1[11] * m2[12]);
+        destination[9] = (m1[8] * m2[1] + m1[9] * m2[5] + m1[10] * m2[9] + m1[11] * m2[13]);
+        destination[10] = (m1[8] * m2[2] + m1[9] * m2[6] + m1[10] * m2[10] + m1[11] * m2[14]);
+        destination[11] = (m1[8] * m2[3] + m1[9] * m2[7] + m1[10] * m2[11] + m1[11] * m2[15]);
+
+        destination[12] = (m1[12] * m2[0] + m1[13] * m2[4] + m1[14] * m2[8] + m1[15] * m2[12]);
+        destination[13] = (m1[12] * m2[1] + m1[13] * m2[5] + m1[14] * m2[9] + m1[15] * m2[13]);
+        destination[14] = (m1[12] * m2[2] + m1[13] * m2[6] + m1[14] * m2[10] + m1[15] * m2[14]);
+        destination[15] = (m1[12] * m2[3] + m1[13] * m2[7] + m1[14] * m2[11] + m1[15] * m2[15]);
+
+    }
+
+    /**
+     * Same as Transform.updateMatrix() - identity, rotate, scale and translate.
+     */
+    static float[] updateMatrix(float[] matrix, float[] axisAngle, float[] scale, float[] translate) {
+        for (int i = 0; i < 16; i++) {
+            matrix[i] = (i % 5) == 0 ? 1 : 0;
+        }
+        setRotateM(temp, 0, axisAngle[AxisAngle.ANGLE], axisAngle[AxisAngle.X], axisAngle[AxisAngle.Y],
+                axisAngle[AxisAngle.Z]);
+        mul4(matrix, temp, result);
+        System.arraycopy(result, 0, matrix, 0, 16);
+        for (int i = 0; i < 4; i++) {
+            matrix[i] *= scale[0];
+            matrix[i + 4] *= scale[1];
+            matrix[i + 8] *= scale[2];
+        }
+        matrix[3] += translate[0];
+        matrix[7] += translate[1];
+        matrix[11] += translate[2];
+        return matrix;
+    }
+
+    static void setRotateM(float[] rm, int rmOffset,
+            float a, float x, float y, float z) {
+        rm[rmOffset + 3] = 0;
+        rm[rmOffset + 7] = 0;
+        rm[rmOffset + 11] = 0;
+        rm[rmOffset + 12] = 0;
+        rm[rmOffset + 13] = 0;
+        rm[rmOffset + 14] = 0;
+        rm[rmOffset + 15] = 1;
+        float s = (float) Math.sin(a);
+        float c = (float) Math.cos(a);
+        if (1.0f == x && 0.0f == y && 0.0f == z) {
+            rm[rmOffset + 5] = c;
+            rm[rmOffset + 10] = c;
+            rm[rmOffset + 6] = s;
+            rm[rmOffset + 9] = -s;
+            rm[rmOffset + 1] = 0;
+            rm[rmOffset + 2] = 0;
+            rm[rmOffset + 4] = 0;
+            rm[rmOffset + 8] = 0;
+            rm[rmOffset + 0] = 1;
+        } else if (0.0f == x && 1.0f == y && 0.0f == z) {
+            rm[rmOffset + 0] = c;
+            rm[rmOffset + 10] = c;
+            rm[rmOffset + 8] = s;
+            rm[rmOffset + 2] = -s;
+            rm[rmOffset + 1] = 0;
+            rm[rmOffset + 4] = 0;
+            rm[rmOffset + 6] = 0;
+            rm[rmOffset + 9] = 0;
+            rm[rmOffset + 5] = 1;
+        } else if (0.0f == x && 0.0f == y && 1.0f == z) {
+            rm[rmOffset + 0] = c;
+            rm[rmOffset + 5] = c;
+            rm[rmOffset + 1] = s;
+            rm[rmOffset + 4] = -s;
+            rm[rmOffset + 2] = 0;
+            rm[rmOffset + 6] = 0;
+            rm[rmOffset + 8] = 0;
+            rm[rmOffset + 9] = 0;
+            rm[rmOffset + 10] = 1;
+        } else {
+            float len = (float) Math.sqrt(x * x + y * y + z * z);
+            if (1.0f != len) {
+                float recipLen = 1.0f / len;
+                x *= recipLen;
+                y *= recipLen;
+                z *= recipLen;
+            }
+            float nc = 1.0f - c;
+            float xy = x * y;
+            float yz = y * z;
+            float zx = z * x;
+            float xs = x * s;
+            float ys = y * s;
+            float zs = z * s;
+            rm[rmOffset + 0] = x * x * nc + c;
+            rm[rmOffset + 4] = xy * nc - zs;
+            rm[rmOffset + 8] = zx * nc + ys;
+            rm[rmOffset + 1] = xy * nc + zs;
+            rm[rmOffset + 5] = y * y * nc + c;
+            rm[rmOffset + 9] = yz * nc - xs;
+            rm[rmOffset + 2] = zx * nc - ys;
+            rm[rmOffset + 6] = yz * nc + xs;
+            rm[rmOffset + 10] = z * z * nc + c;
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.nucleus.vecmath.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nucleus.vecmath.Instrumentation;
+import com.nucleus.vecmath.Matrix;
+import com.nucleus.vecmath.Transform;
+import com.nucleus.vecmath.Vec3;
+
+/**
+ * Compares instrumented hot path methods, with {@link Instrumentation} disabled, against the same methods before
+ * instrumentation was added - see {@link Baseline}. Each pair shall have the same score.
+ * Run with -jvmArgsAppend -Dvecmath.instrumentation=true to measure the cost of enabled instrumentation.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-D" + Instrumentation.PROPERTY + "=false")
+@State(Scope.Thread)
+public class InstrumentationBenchmark {
+
+    private final float[] vec1 = new float[] { 0.3f, 0.5f, 0.8f };
+    private final float[] vec2 = new float[] { -0.2f, 0.7f, 0.1f };
+    private final float[] m1 = Matrix.createMatrix();
+    private final float[] m2 = Matrix.createMatrix();
+    private final float[] dest = Matrix.createMatrix();
+    private final float[] matrix = Matrix.createMatrix();
+    private final Transform transform = new Transform();
+    private final float[] axisAngle = new float[] { 0.3f, 0.5f, 0.8f, 1.1f };
+    private final float[] scale = new float[] { 1, 2, 3 };
+    private final float[] translate = new float[] { 1, 2, 3 };
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < Matrix.MATRIX_ELEMENTS; i++) {
+            m1[i] = i * 0.1f;
+            m2[i] = 1 - i * 0.05f;
+        }
+        transform.setFromMatrix(Baseline.updateMatrix(matrix, axisAngle, scale, translate));
+        System.arraycopy(transform.getAxisAngle().getValues(), 0, axisAngle, 0, axisAngle.length);
+    }
+
+    @Benchmark
+    public float dot() {
+        return Vec3.dot(vec1, 0, vec2, 0);
+    }
+
+    @Benchmark
+    public float baselineDot() {
+        return Baseline.dot(vec1, 0, vec2, 0);
+    }
+
+    @Benchmark
+    public float[] mul4() {
+        Matrix.mul4(m1, m2, dest);
+        return dest;
+    }
+
+    @Benchmark
+    public float[] baselineMul4() {
+        Baseline.mul4(m1, m2, dest);
+        return dest;
+    }
+
+    @Benchmark
+    public float[] updateMatrix() {
+        return transform.updateMatrix();
+    }
+
+    @Benchmark
+    public float[] baselineUpdateMatrix() {
+        return Baseline.updateMatrix(matrix, axisAngle, scale, translate);
+    }
+
+}
@@ -0,0 +1,328 @@
+package com.nucleus.vecmath;
+
+/**
+ * Camera with projection and view matrix, the view projection, inverse view projection and frustum planes are
+ * calculated when fetched and cached until projection or view is changed.
+ * View space is the same as used by {@link Matrix#setProjectionM(float[], int, float, float, float, float)}, the
+ * camera looks along negative z with y up. Matrices are row major, vectors are transformed as v' = M * v.
+ * This class is NOT thread safe.
+ *
+ * @author Richard Sahlin
+ *
+ */
+public class Camera extends VecMath {
+
+    /**
+     * Index of the planes returned by {@link #getFrustumPlanes()}
+     */
+    public final static int LEFT = 0;
+    public final static int RIGHT = 1;
+    public final static int BOTTOM = 2;
+    public final static int TOP = 3;
+    public final static int NEAR = 4;
+    public final static int FAR = 5;
+    /**
+     * Number of frustum planes
+     */
+    public final static int PLANES = 6;
+    /**
+     * Number of values for each plane, a, b, c and d where a * x + b * y + c * z + d >= 0 is inside
+     */
+    public final static int PLANE_ELEMENTS = 4;
+
+    private final float[] projection = Matrix.setIdentity(Matrix.createMatrix(), 0);
+    private final float[] view = Matrix.setIdentity(Matrix.createMatrix(), 0);
+    private final float[] viewProjection = Matrix.createMatrix();
+    private final float[] inverseViewProjection = Matrix.createMatrix();
+    private final float[] planes = new float[PLANES * PLANE_ELEMENTS];
+    private final float[] invertTemp = new float[Matrix.INVERT_TEMP_ELEMENTS];
+    private boolean viewProjectionDirty = true;
+    private boolean inverseDirty = true;
+    private boolean planesDirty = true;
+
+    /**
+     * Sets a perspective projection
+     *
+     * @param aspectRatio Width / height
+     * @param yfov Vertical field of view, in radians
+     * @param near Distance to near plane
+     * @param far Distance to far plane, or -1 for infinite far plane
+     */
+    public void setPerspective(float aspectRatio, float yfov, float near, float far) {
+        Matrix.setProjectionM(projection, 0, aspectRatio, yfov, far, near);
+        setDirty();
+    }
+
+    /**
+     * Sets an orthographic projection, near and far are distances along the view direction - the same as
+     * for {@link #setPerspective(float, float, float, float)}
+     *
+     * @param left
+     * @param right
+     * @param bottom
+     * @param top
+     * @param near Distance to near plane
+     * @param far Distance to far plane
+     */
+    public void setOrthographic(float left, float right, float bottom, float top, float near, float far) {
+        // Camera looks along negative z
+        Matrix.orthoM(projection, 0, left, right, bottom, top, -near, -far);
+        setDirty();
+    }
+
+    /**
+     * Copies the projection matrix
+     *
+     * @param matrix
+     * @param offset Offset into matrix where values are read
+     */
+    public void setProjection(float[] matrix, int offset) {
+        System.arraycopy(matrix, offset, projection, 0, Matrix.MATRIX_ELEMENTS);
+        setDirty();
+    }
+
+    /**
+     * Sets the view matrix so that the camera is at eye, looking at target with the up vector.
+     * Up shall not be parallel to the view direction.
+     *
+     * @param eyeX
+     * @param eyeY
+     * @param eyeZ
+     * @param targetX
+     * @param targetY
+     * @param targetZ
+     * @param upX
+     * @param upY
+     * @param upZ
+     */
+    public void lookAt(float eyeX, float eyeY, float eyeZ, float targetX, float targetY, float targetZ, float upX,
+            float upY, float upZ) {
+        lookAt(view, 0, eyeX, eyeY, eyeZ, targetX, targetY, targetZ, upX, upY, upZ);
+        setDirty();
+    }
+
+    /**
+     * Sets the view matrix so that the camera is at eye, looking at target with the up vector.
+     *
+     * @param eye
+     * @param eyeIndex Index into eye where x, y and z is read
+     * @param target
+     * @param targetIndex Index into target where x, y and z is read
+     * @param up
+     * @param upIndex Index into up where x, y and z is read
+     */
+    public void lookAt(float[] eye, int eyeIndex, float[] target, int targetIndex, float[] up, int upIndex) {
+        lookAt(eye[eyeIndex], eye[eyeIndex + 1], eye[eyeIndex + 2], target[targetIndex], target[targetIndex + 1],
+                target[targetIndex + 2], up[upIndex], up[upIndex + 1], up[upIndex + 2]);
+    }
+
+    /**
+     * Sets the view matrix from the camera transform, the view is the inverse of the transform matrix.
+     *
+     * @param transform Transform of the camera in world space
+     * @return True if the view was set, false if the transform matrix could not be inverted, eg zero scale - in
+     * which case the view is not changed.
+     */
+    public boolean setView(Transform transform) {
+        if (!Matrix.invertM(view, 0, transform.updateMatrix(), 0, invertTemp)) {
+            return false;
+        }
+        setDirty();
+        return true;
+    }
+
+    /**
+     * Copies the view matrix
+     *
+     * @param matrix
+     * @param offset Offset into matrix where values are read
+     */
+    public void setView(float[] matrix, int offset) {
+        System.arraycopy(matrix, offset, view, 0, Matrix.MATRIX_ELEMENTS);
+        setDirty();
+    }
+
+    /**
+     * Returns the projection matrix, do not write to this matrix - use {@link #setProjection(float[], int)}
+     *
+     * @return
+     */
+    public float[] getProjection() {
+        return projection;
+    }
+
+    /**
+     * Returns the view matrix, do not write to this matrix - use {@link #setView(float[], int)}
+     *
+     * @return
+     */
+    public float[] getView() {
+        return view;
+    }
+
+    /**
+     * Returns projection * view, this is only calculated when projection or view has changed.
+     * Do not write to this matrix.
+     *
+     * @return
+     */
+    public float[] getViewProjection() {
+        if (viewProjectionDirty) {
+            Matrix.mul4(projection, 0, view, 0, viewProjection, 0);
+            viewProjectionDirty = false;
+        }
+        return viewProjection;
+    }
+
+    /**
+     * Returns the inverse of the view projection, use this to unproject from normalized device coordinates to
+     * world space. This is only calculated when projection or view has changed.
+     * Do not write to this matrix.
+     *
+     * @return The inverse view projection, or null if the view projection could not be inverted.
+     */
+    public float[] getInverseViewProjection() {
+        if (inverseDirty) {
+            if (!Matrix.invertM(inverseViewProjection, 0, getViewProjection(), 0, invertTemp)) {
+                // Keep dirty so that the inverse is not used until it can be calculated
+                return null;
+            }
+            inverseDirty = false;
+        }
+        return inverseViewProjection;
+    }
+
+    /**
+     * Returns the 6 world space frustum planes, indexed by {@link #LEFT}, {@link #RIGHT}, {@link #BOTTOM},
+     * {@link #TOP}, {@link #NEAR} and {@link #FAR}, 4 values per plane. This is only calculated when projection or
+     * view has changed. Do not write to the planes.
+     *
+     * @return
+     */
+    public float[] getFrustumPlanes() {
+        if (planesDirty) {
+            extractPlanes(getViewProjection(), 0, planes, 0);
+            planesDirty = false;
+        }
+        return planes;
+    }
+
+    /**
+     * Checks if the sphere is inside or intersects the frustum, the sphere may be reported as visible when it is
+     * outside near a frustum corner.
+     *
+     * @param x Sphere center x, in world space
+     * @param y Sphere center y
+     * @param z Sphere center z
+     * @param radius Sphere radius
+     * @return true if the sphere is inside or intersects the frustum, false if it is outside.
+     */
+    public boolean isVisible(float x, float y, float z, float radius) {
+        float[] p = getFrustumPlanes();
+        for (int i = 0; i < PLANES * PLANE_ELEMENTS; i += PLANE_ELEMENTS) {
+            if (p[i] * x + p[i + 1] * y + p[i + 2] * z + p[i + 3] < -radius) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void setDirty() {
+        viewProjectionDirty = true;
+        inverseDirty = true;
+        planesDirty = true;
+    }
+
+    /**
+     * Sets a look at view matrix, the camera is at eye looking at target with the up vector.
+     * All 16 values are written.
+     *
+     * @param m Destination matrix
+     * @param offset Offset into m where the matrix is written
+     * @param eyeX
+     * @param eyeY
+     * @param eyeZ
+     * @param targetX
+     * @param targetY
+     * @param targetZ
+     * @param upX
+     * @param upY
+     * @param upZ
+     * @return The destination matrix
+     */
+    public static float[] lookAt(float[] m, int offset, float eyeX, float eyeY, float eyeZ, float targetX,
+            float targetY, float targetZ, float upX, float upY, float upZ) {
+        float fx = targetX - eyeX;
+        float fy = targetY - eyeY;
+        float fz = targetZ - eyeZ;
+        float len = 1 / Matrix.length(fx, fy, fz);
+        fx *= len;
+        fy *= len;
+        fz *= len;
+        // side = forward x up
+        float sx = fy * upZ - fz * upY;
+        float sy = fz * upX - fx * upZ;
+        float sz = fx * upY - fy * upX;
+        len = 1 / Matrix.length(sx, sy, sz);
+        sx *= len;
+        sy *= len;
+        sz *= len;
+        // up = side x forward
+        float ux = sy * fz - sz * fy;
+        float uy = sz * fx - sx * fz;
+        float uz = sx * fy - sy * fx;
+        m[offset] = sx;
+        m[offset + 1] = sy;
+        m[offset + 2] = sz;
+        m[offset + 3] = -(sx * eyeX + sy * eyeY + sz * eyeZ);
+        m[offset + 4] = ux;
+        m[offset + 5] = uy;
+        m[offset + 6] = uz;
+        m[offset + 7] = -(ux * eyeX + uy * eyeY + uz * eyeZ);
+        m[offset + 8] = -fx;
+        m[offset + 9] = -fy;
+        m[offset + 10] = -fz;
+        m[offset + 11] = fx * eyeX + fy * eyeY + fz * eyeZ;
+        m[offset + 12] = 0;
+        m[offset + 13] = 0;
+        m[offset + 14] = 0;
+        m[offset + 15] = 1;
+        return m;
+    }
+
+    /**
+     * Extracts the 6 frustum planes from a projection or view projection matrix, planes are in the space that the
+     * matrix transforms from - world space for a view projection. The planes are normalized, a * x + b * y + c * z
+     * + d is the signed distance to the plane and is positive inside the frustum.
+     * The far plane of an infinite projection has zero normal and is always inside.
+     *
+     * @param m The matrix
+     * @param offset Offset into m where the matrix is read
+     * @param planes Destination for 6 planes, 4 values each, in the order left, right, bottom, top, near, far
+     * @param index Index into planes where the first plane is written
+     */
+    public static void extractPlanes(float[] m, int offset, float[] planes, int index) {
+        for (int i = 0; i < PLANES; i++) {
+            // Plane is row 3 +/- row 0, 1 or 2
+            int row = offset + (i >> 1) * 4;
+            float sign = (i & 1) == 0 ? 1 : -1;
+            float a = m[offset + 12] + sign * m[row];
+            float b = m[offset + 13] + sign * m[row + 1];
+            float c = m[offset + 14] + sign * m[row + 2];
+            float d = m[offset + 15] + sign * m[row + 3];
+            float len = Matrix.length(a, b, c);
+            if (len > 0) {
+                len = 1 / len;
+                a *= len;
+                b *= len;
+                c *= len;
+                d *= len;
+            }
+            planes[index++] = a;
+            planes[index++] = b;
+            planes[index++] = c;
+            planes[index++] = d;
+        }
+    }
+
+}
@@ -0,0 +1,307 @@
+package com.nucleus.vecmath;
+
+/**
+ * Unit dual quaternion representing a rigid transform - rotation and translation, 8 values instead of the 16
+ * needed for a matrix.
+ * Values are stored as real part x, y, z, w followed by dual part x, y, z, w. The rotation uses the same quaternion
+ * convention as {@link Matrix#setQuaternionRotation(float[], float[])}
+ * Scale can not be represented, scale in source transforms or matrices is ignored.
+ * The static methods work on packed arrays, 8 values per dual quaternion, for instance a joint palette used
+ * by {@link Skinning#skinDualQuaternion(float[], float[], int[], float[], float[], float[], float[], int, int)}
+ *
+ * @author Richard Sahlin
+ *
+ */
+public final class DualQuaternion extends VecMath {
+
+    /**
+     * Number of values in a dual quaternion
+     */
+    public final static int ELEMENTS = 8;
+    /**
+     * Index to real part w
+     */
+    public final static int W = 3;
+    /**
+     * Index to the dual part
+     */
+    public final static int DUAL = 4;
+
+    /**
+     * The dual quaternion values, real x,y,z,w and dual x,y,z,w
+     */
+    public final float[] values = new float[ELEMENTS];
+
+    /**
+     * Creates an identity dual quaternion
+     */
+    public DualQuaternion() {
+        setIdentity(values, 0);
+    }
+
+    /**
+     * Creates a dual quaternion from the rotation and translation of the transform
+     *
+     * @param transform
+     */
+    public DualQuaternion(Transform transform) {
+        set(transform, values, 0);
+    }
+
+    /**
+     * Sets this dual quaternion from the rotation and translation of the matrix
+     *
+     * @param matrix
+     * @param offset Offset into matrix where values are read
+     */
+    public void setMatrix(float[] matrix, int offset) {
+        set(matrix, offset, values, 0);
+    }
+
+    /**
+     * Stores the rotation and translation of this dual quaternion in the matrix, all 16 values are written.
+     *
+     * @param matrix
+     * @param offset Offset into matrix where values are written
+     * @return The matrix
+     */
+    public float[] toMatrix(float[] matrix, int offset) {
+        return toMatrix(values, 0, matrix, offset);
+    }
+
+    /**
+     * Sets the dual quaternion at index to identity
+     *
+     * @param dq
+     * @param index
+     */
+    public static void setIdentity(float[] dq, int index) {
+        dq[index++] = 0;
+        dq[index++] = 0;
+        dq[index++] = 0;
+        dq[index++] = 1;
+        dq[index++] = 0;
+        dq[index++] = 0;
+        dq[index++] = 0;
+        dq[index] = 0;
+    }
+
+    /**
+     * Sets the dual quaternion from rotation quaternion and translation
+     *
+     * @param qx Rotation quaternion x, quaternion shall be normalized
+     * @param qy Rotation quaternion y
+     * @param qz Rotation quaternion z
+     * @param qw Rotation quaternion w
+     * @param tx Translation x
+     * @param ty Translation y
+     * @param tz Translation z
+     * @param dest
+     * @param index Index into dest where values are written
+     */
+    public static void set(float qx, float qy, float qz, float qw, float tx, float ty, float tz, float[] dest,
+            int index) {
+        dest[index++] = qx;
+        dest[index++] = qy;
+        dest[index++] = qz;
+        dest[index++] = qw;
+        // dual = 0.5 * translation * real
+        dest[index++] = 0.5f * (tx * qw + ty * qz - tz * qy);
+        dest[index++] = 0.5f * (-tx * qz + ty * qw + tz * qx);
+        dest[index++] = 0.5f * (tx * qy - ty * qx + tz * qw);
+        dest[index] = -0.5f * (tx * qx + ty * qy + tz * qz);
+    }
+
+    /**
+     * Sets the dual quaternion from the rotation and translation of the matrix, scale is removed from the rotation.
+     * The matrix is treated as translate * scale * rotate, as created by {@link Transform#updateMatrix()}, ie
+     * scale is the length of the rows of the upper 3 x 3.
+     * If one row has zero length, eg a joint collapsed with scale 0, that row of the rotation is calculated from the
+     * other two. If more than one row has zero length the rotation is identity.
+     *
+     * @param matrix
+     * @param offset Offset into matrix where values are read
+     * @param dest
+     * @param index Index into dest where values are written
+     */
+    public static void set(float[] matrix, int offset, float[] dest, int index) {
+        float r00 = matrix[offset];
+        float r01 = matrix[offset + 1];
+        float r02 = matrix[offset + 2];
+        float r10 = matrix[offset + 4];
+        float r11 = matrix[offset + 5];
+        float r12 = matrix[offset + 6];
+        float r20 = matrix[offset + 8];
+        float r21 = matrix[offset + 9];
+        float r22 = matrix[offset + 10];
+        float sx = Matrix.length(r00, r01, r02);
+        float sy = Matrix.length(r10, r11, r12);
+        float sz = Matrix.length(r20, r21, r22);
+        int zero = 0;
+        if (sx > 0) {
+            sx = 1 / sx;
+            r00 *= sx;
+            r01 *= sx;
+            r02 *= sx;
+        } else {
+            zero++;
+        }
+        if (sy > 0) {
+            sy = 1 / sy;
+            r10 *= sy;
+            r11 *= sy;
+            r12 *= sy;
+        } else {
+            zero++;
+        }
+        if (sz > 0) {
+            sz = 1 / sz;
+            r20 *= sz;
+            r21 *= sz;
+            r22 *= sz;
+        } else {
+            zero++;
+        }
+        if (zero > 1) {
+            set(0, 0, 0, 1, matrix[offset + 3], matrix[offset + 7], matrix[offset + 11], dest, index);
+            return;
+        }
+        // Rows of the rotation are orthonormal, a missing row is the cross product of the other two
+        if (sx == 0) {
+            r00 = r11 * r22 - r12 * r21;
+            r01 = r12 * r20 - r10 * r22;
+            r02 = r10 * r21 - r11 * r20;
+        } else if (sy == 0) {
+            r10 = r21 * r02 - r22 * r01;
+            r11 = r22 * r00 - r20 * r02;
+            r12 = r20 * r01 - r21 * r00;
+        } else if (sz == 0) {
+            r20 = r01 * r12 - r02 * r11;
+            r21 = r02 * r10 - r00 * r12;
+            r22 = r00 * r11 - r01 * r10;
+        }
+        Matrix.getQuaternion(r00, r01, r02, r10, r11, r12, r20, r21, r22, dest, index);
+        set(dest[index], dest[index + 1], dest[index + 2], dest[index + W], matrix[offset + 3], matrix[offset + 7],
+                matrix[offset + 11], dest, index);
+    }
+
+    /**
+     * Sets the dual quaternion from the axis angle and translation of the transform, scale is ignored.
+     * The rotation is the same as used by {@link Transform#updateMatrix()}
+     *
+     * @param transform
+     * @param dest
+     * @param index Index into dest where values are written
+     */
+    public static void set(Transform transform, float[] dest, int index) {
+        transform.getQuaternion(dest, index);
+        float[] t = transform.getTranslate();
+        if (t != null) {
+            set(dest[index], dest[index + 1], dest[index + 2], dest[index + W], t[X], t[Y], t[Z], dest, index);
+        } else {
+            set(dest[index], dest[index + 1], dest[index + 2], dest[index + W], 0, 0, 0, dest, index);
+        }
+    }
+
+    /**
+     * Stores the rotation and translation of the dual quaternion in the matrix, all 16 values are written.
+     *
+     * @param dq
+     * @param index Index into dq where values are read
+     * @param matrix
+     * @param offset Offset into matrix where values are written
+     * @return The matrix
+     */
+    public static float[] toMatrix(float[] dq, int index, float[] matrix, int offset) {
+        float rx = dq[index];
+        float ry = dq[index + 1];
+        float rz = dq[index + 2];
+        float rw = dq[index + 3];
+        float dx = dq[index + 4];
+        float dy = dq[index + 5];
+        float dz = dq[index + 6];
+        float dw = dq[index + 7];
+        float norm = rx * rx + ry * ry + rz * rz + rw * rw;
+        float s = norm > 0 ? 2 / norm : 0;
+        float xs = rx * s;
+        float ys = ry * s;
+        float zs = rz * s;
+        float xx = rx * xs;
+        float xy = rx * ys;
+        float xz = rx * zs;
+        float xw = rw * xs;
+        float yy = ry * ys;
+        float yz = ry * zs;
+        float yw = rw * ys;
+        float zz = rz * zs;
+        float zw = rw * zs;
+        matrix[offset] = 1 - (yy + zz);
+        matrix[offset + 1] = xy - zw;
+        matrix[offset + 2] = xz + yw;
+        matrix[offset + 4] = xy + zw;
+        matrix[offset + 5] = 1 - (xx + zz);
+        matrix[offset + 6] = yz - xw;
+        matrix[offset + 8] = xz - yw;
+        matrix[offset + 9] = yz + xw;
+        matrix[offset + 10] = 1 - (xx + yy);
+        // translation = 2 * dual * conjugate(real)
+        matrix[offset + 3] = s * (-dw * rx + dx * rw - dy * rz + dz * ry);
+        matrix[offset + 7] = s * (-dw * ry + dx * rz + dy * rw - dz * rx);
+        matrix[offset + 11] = s * (-dw * rz - dx * ry + dy * rx + dz * rw);
+        matrix[offset + 12] = 0;
+        matrix[offset + 13] = 0;
+        matrix[offset + 14] = 0;
+        matrix[offset + 15] = 1;
+        return matrix;
+    }
+
+    /**
+     * Blends count dual quaternions from the palette using weights and stores the normalized result.
+     * Dual quaternions that are in the opposite hemisphere of the first one are negated before blending so that
+     * the shortest path is used.
+     *
+     * @param palette Packed dual quaternions, 8 values each
+     * @param joints Index of the dual quaternions to blend
+     * @param weights Weights of the dual quaternions to blend
+     * @param influence Index into joints and weights where the first influence is read
+     * @param count Number of influences
+     * @param dest
+     * @param index Index into dest where the blended dual quaternion is written
+     */
+    public static void blend(float[] palette, int[] joints, float[] weights, int influence, int count,
+            float[] dest, int index) {
+        int first = joints[influence] * ELEMENTS;
+        float b0 = 0, b1 = 0, b2 = 0, b3 = 0, b4 = 0, b5 = 0, b6 = 0, b7 = 0;
+        for (int i = 0; i < count; i++) {
+            float w = weights[influence + i];
+            if (w != 0) {
+                int j = joints[influence + i] * ELEMENTS;
+                if (palette[first] * palette[j] + palette[first + 1] * palette[j + 1]
+                        + palette[first + 2] * palette[j + 2] + palette[first + 3] * palette[j + 3] < 0) {
+                    w = -w;
+                }
+                b0 += palette[j] * w;
+                b1 += palette[j + 1] * w;
+                b2 += palette[j + 2] * w;
+                b3 += palette[j + 3] * w;
+                b4 += palette[j + 4] * w;
+                b5 += palette[j + 5] * w;
+                b6 += palette[j + 6] * w;
+                b7 += palette[j + 7] * w;
+            }
+        }
+        float len = (float) Math.sqrt(b0 * b0 + b1 * b1 + b2 * b2 + b3 * b3);
+        if (len > 0) {
+            len = 1 / len;
+        }
+        dest[index++] = b0 * len;
+        dest[index++] = b1 * len;
+        dest[index++] = b2 * len;
+        dest[index++] = b3 * len;
+        dest[index++] = b4 * len;
+        dest[index++] = b5 * len;
+        dest[index++] = b6 * len;
+        dest[index] = b7 * len;
+    }
+
+}
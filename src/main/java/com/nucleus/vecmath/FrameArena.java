@@ -0,0 +1,168 @@
+package com.nucleus.vecmath;
+
+import java.util.Arrays;
+
+/**
+ * Frame scoped arena for temporary matrices and vectors, slots are handed out as offsets into one backing float[]
+ * so that no memory is allocated in per frame code. All slots are released at once by {@link #reset()}, this is
+ * O(1) - call it at the end of each frame.
+ * The backing array is fetched using {@link #getValues()} and is used with the offset based methods in
+ * {@link Matrix}, {@link Vec3} and {@link Vec2}, the array does not change for the lifetime of the arena.
+ * Use after reset is checked when the system property {@value #DEBUG_PROPERTY} is set to true, released values
+ * are then overwritten with NaN and {@link #check(int, int)} will throw an exception for stale slots.
+ * This class is NOT thread safe, use one arena per thread.
+ *
+ * @author Richard Sahlin
+ *
+ */
+public class FrameArena {
+
+    /**
+     * System property to enable use after reset checks
+     */
+    public static final String DEBUG_PROPERTY = "vecmath.arena.debug";
+
+    /**
+     * True if use after reset checks are enabled, this is read once at class initialization.
+     */
+    public static final boolean DEBUG = Boolean.getBoolean(DEBUG_PROPERTY);
+
+    private final float[] values;
+    private int position = 0;
+    private int frame = 0;
+    private int highWater = 0;
+
+    /**
+     * Creates a new arena with room for capacity float values
+     *
+     * @param capacity Number of float values in the arena
+     */
+    public FrameArena(int capacity) {
+        values = new float[capacity];
+    }
+
+    /**
+     * Returns the backing array, slots are offsets into this array.
+     *
+     * @return
+     */
+    public float[] getValues() {
+        return values;
+    }
+
+    /**
+     * Allocates a slot with room for count values, the values are not cleared.
+     *
+     * @param count Number of values
+     * @return Offset into the backing array where the slot starts
+     * @throws IllegalArgumentException If there is no room in the arena
+     */
+    public int allocate(int count) {
+        int offset = position;
+        if (count < 0 || offset + count > values.length) {
+            throw new IllegalArgumentException(
+                    "Arena full, capacity " + values.length + ", used " + offset + ", requested " + count);
+        }
+        position += count;
+        return offset;
+    }
+
+    /**
+     * Allocates a matrix slot that is set to identity.
+     *
+     * @return Offset into the backing array where the matrix starts
+     * @throws IllegalArgumentException If there is no room in the arena
+     */
+    public int allocateMatrix() {
+        int offset = allocate(Matrix.MATRIX_ELEMENTS);
+        Matrix.setIdentity(values, offset);
+        return offset;
+    }
+
+    /**
+     * Allocates a vec3 slot that is set to 0
+     *
+     * @return Offset into the backing array where the vector starts
+     * @throws IllegalArgumentException If there is no room in the arena
+     */
+    public int allocateVec3() {
+        int offset = allocate(3);
+        values[offset] = 0;
+        values[offset + 1] = 0;
+        values[offset + 2] = 0;
+        return offset;
+    }
+
+    /**
+     * Allocates a vec2 slot that is set to 0
+     *
+     * @return Offset into the backing array where the vector starts
+     * @throws IllegalArgumentException If there is no room in the arena
+     */
+    public int allocateVec2() {
+        int offset = allocate(2);
+        values[offset] = 0;
+        values[offset + 1] = 0;
+        return offset;
+    }
+
+    /**
+     * Releases all slots, this shall be called at the end of each frame. The frame counter is incremented.
+     */
+    public void reset() {
+        if (position > highWater) {
+            highWater = position;
+        }
+        if (DEBUG) {
+            Arrays.fill(values, 0, position, Float.NaN);
+        }
+        position = 0;
+        frame++;
+    }
+
+    /**
+     * Returns the frame counter, this is incremented by {@link #reset()}. Store this together with the offset of
+     * a slot to be able to check for use after reset using {@link #check(int, int)}
+     *
+     * @return
+     */
+    public int getFrame() {
+        return frame;
+    }
+
+    /**
+     * Returns the number of values that are currently allocated
+     *
+     * @return
+     */
+    public int getUsed() {
+        return position;
+    }
+
+    /**
+     * Returns the max number of values that have been allocated in one frame, use this to size the arena.
+     *
+     * @return
+     */
+    public int getHighWater() {
+        return Math.max(highWater, position);
+    }
+
+    /**
+     * Checks that the slot at offset, allocated in frame, has not been released. Does nothing unless
+     * {@link #DEBUG} is true.
+     *
+     * @param offset Offset of the slot
+     * @param allocationFrame Frame counter when the slot was allocated, as returned by {@link #getFrame()}
+     * @throws IllegalArgumentException If the slot has been released by {@link #reset()}
+     */
+    public void check(int offset, int allocationFrame) {
+        if (DEBUG) {
+            if (allocationFrame != frame || offset >= position) {
+                throw new IllegalArgumentException("Use after reset of slot " + offset + " allocated in frame "
+                        + allocationFrame + ", current frame " + frame);
+            }
+        }
+    }
+
+}
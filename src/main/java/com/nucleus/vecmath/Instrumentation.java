@@ -0,0 +1,183 @@
+package com.nucleus.vecmath;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optional instrumentation of hot path operations.
+ * Keeps striped, low overhead, counters per operation and emits a JDK Flight Recorder event, with element count and
+ * duration, for each batch operation - the event is only present when built on JDK 11 or later. The counters can
+ * be read using {@link #getSnapshot()}
+ * Instrumentation is enabled by setting the system property {@value #PROPERTY} to true at startup, when disabled
+ * the {@link #ENABLED} check is a constant false and the instrumentation is removed by the JIT.
+ * Calls shall be guarded like this:
+ * 
+ * <pre>
+ * if (Instrumentation.ENABLED) {
+ *     Instrumentation.count(Operation.MUL4);
+ * }
+ * </pre>
+ *
+ * @author Richard Sahlin
+ *
+ */
+public final class Instrumentation {
+
+    /**
+     * System property to enable instrumentation
+     */
+    public static final String PROPERTY = "vecmath.instrumentation";
+
+    /**
+     * True if instrumentation is enabled, this is read once at class initialization.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean(PROPERTY);
+
+    /**
+     * The instrumented operations
+     */
+    public enum Operation {
+        MUL4,
+        INVERT,
+        ROTATE,
+        SET_ROTATE,
+        NORMAL_MATRIX,
+        DECOMPOSE,
+        ORTHONORMALIZE,
+        PROJECTION,
+        TRANSFORM_VEC2,
+        TRANSFORM_VEC3,
+        UPDATE_MATRIX,
+        VEC3_NORMALIZE,
+        VEC3_CROSS,
+        VEC3_DOT,
+        INTERSECT_AABB,
+        INTERSECT_TRIANGLES,
+        HIERARCHY_UPDATE,
+        SKIN,
+        SKIN_DUAL_QUATERNION,
+        SPRITE_QUADS,
+        SPLINE,
+        UNIFORM_PACK,
+        INTERPOLATE,
+        TRS,
+        QUANTIZE,
+        MORTON,
+        SPATIAL_HASH;
+    }
+
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final LongAdder[] counters = new LongAdder[OPERATIONS.length];
+    /**
+     * Flight recorder event commit, the event is in a separate source root that is only compiled on JDK 11 or later
+     * so that this library can be built for 1.8 - null if not present or flight recorder is not in the runtime.
+     */
+    private static final MethodHandle BATCH_EVENT = ENABLED ? getBatchEvent() : null;
+
+    static {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    private Instrumentation() {
+    }
+
+    private static MethodHandle getBatchEvent() {
+        try {
+            return MethodHandles.lookup().findStatic(Class.forName("com.nucleus.vecmath.BatchEvent"), "commit",
+                    MethodType.methodType(void.class, Operation.class, int.class, long.class));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Event not compiled or flight recorder not present in this runtime
+            return null;
+        }
+    }
+
+    /**
+     * Increments the counter for the operation by one
+     * 
+     * @param operation
+     */
+    public static void count(Operation operation) {
+        counters[operation.ordinal()].increment();
+    }
+
+    /**
+     * Call at the start of a batch operation, returns the start time to be passed to
+     * {@link #end(Operation, int, long)}
+     * 
+     * @return Start time in nanoseconds
+     */
+    public static long begin() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Adds count to the operation counter
+     * 
+     * @param operation
+     * @param count
+     */
+    public static void add(Operation operation, int count) {
+        counters[operation.ordinal()].add(count);
+    }
+
+    /**
+     * Call at the end of a batch operation, adds count to the operation counter and emits a flight recorder event
+     * if the event is enabled in the recording.
+     * 
+     * @param operation
+     * @param count Number of elements processed by the batch operation
+     * @param start Start time as returned by {@link #begin()}
+     */
+    public static void end(Operation operation, int count, long start) {
+        counters[operation.ordinal()].add(count);
+        event(operation, count, start);
+    }
+
+    /**
+     * Emits a flight recorder event for a batch operation, if the event is enabled in the recording, without
+     * changing the counter. Use this for batch operations where each element is already counted.
+     * 
+     * @param operation
+     * @param count Number of elements processed by the batch operation
+     * @param start Start time as returned by {@link #begin()}
+     */
+    public static void event(Operation operation, int count, long start) {
+        long duration = System.nanoTime() - start;
+        if (BATCH_EVENT != null) {
+            try {
+                BATCH_EVENT.invokeExact(operation, count, duration);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Returns a snapshot of the operation counters, the snapshot is not atomic across operations.
+     * 
+     * @return Map with count for each operation
+     */
+    public static Map<Operation, Long> getSnapshot() {
+        EnumMap<Operation, Long> snapshot = new EnumMap<>(Operation.class);
+        for (Operation operation : OPERATIONS) {
+            snapshot.put(operation, counters[operation.ordinal()].sum());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Resets all operation counters to zero
+     */
+    public static void reset() {
+        for (LongAdder counter : counters) {
+            counter.reset();
+        }
+    }
+
+}
@@ -1,10 +1,25 @@
 package com.nucleus.vecmath;
 
+import com.nucleus.vecmath.Instrumentation.Operation;
+
 /**
  * Static utilities for linear interpolation
+ * The transform interpolation methods use static temp float arrays and are NOT thread safe.
  */
 public class Lerp {
 
+    /**
+     * Below this angle, as cos of half angle difference, quaternions are interpolated linearly
+     */
+    private final static float SLERP_THRESHOLD = 0.9995f;
+
+    /**
+     * Index of the interpolated quaternion in temp, after the previous and current state
+     */
+    private final static int TEMP_QUATERNION = TRS.ELEMENTS * 2;
+
+    private static float[] temp = new float[TEMP_QUATERNION + 4];
+
     /**
      * Linear interpolation on a vec3 stored as float[]
      * result goes from a when w is 0 and b when w is 1
@@ -22,5 +37,139 @@ public class Lerp {
         result[resultIndex++] = a[2] + w * (b[2] - a[2]);
         return result;
     }
-    
+
+    /**
+     * Spherical linear interpolation between two unit quaternions, x, y, z, w, using the shortest path.
+     * Result goes from q1 when w is 0 to q2 when w is 1, the result may be the same as q1 or q2.
+     *
+     * @param q1
+     * @param index1 Index into q1
+     * @param q2
+     * @param index2 Index into q2
+     * @param w weight, 0 = q1, 1 = q2
+     * @param result
+     * @param resultIndex Index into result where the quaternion is written
+     * @return The result
+     */
+    public static final float[] slerp(float[] q1, int index1, float[] q2, int index2, float w, float[] result,
+            int resultIndex) {
+        float x1 = q1[index1];
+        float y1 = q1[index1 + 1];
+        float z1 = q1[index1 + 2];
+        float w1 = q1[index1 + 3];
+        float x2 = q2[index2];
+        float y2 = q2[index2 + 1];
+        float z2 = q2[index2 + 2];
+        float w2 = q2[index2 + 3];
+        float cos = x1 * x2 + y1 * y2 + z1 * z2 + w1 * w2;
+        if (cos < 0) {
+            cos = -cos;
+            x2 = -x2;
+            y2 = -y2;
+            z2 = -z2;
+            w2 = -w2;
+        }
+        float s1;
+        float s2;
+        if (cos < SLERP_THRESHOLD) {
+            float angle = (float) Math.acos(cos);
+            float sin = 1 / (float) Math.sin(angle);
+            s1 = (float) Math.sin((1 - w) * angle) * sin;
+            s2 = (float) Math.sin(w * angle) * sin;
+        } else {
+            // Close to each other, linear interpolation and normalize
+            s1 = 1 - w;
+            s2 = w;
+        }
+        float x = x1 * s1 + x2 * s2;
+        float y = y1 * s1 + y2 * s2;
+        float z = z1 * s1 + z2 * s2;
+        float qw = w1 * s1 + w2 * s2;
+        float len = 1 / (float) Math.sqrt(x * x + y * y + z * z + qw * qw);
+        result[resultIndex++] = x * len;
+        result[resultIndex++] = y * len;
+        result[resultIndex++] = z * len;
+        result[resultIndex] = qw * len;
+        return result;
+    }
+
+    /**
+     * Interpolates between two transforms and stores the matrix, translate and scale are interpolated linearly and
+     * rotation is spherical linear interpolated. At w = 0 the matrix is the same as {@link Transform#updateMatrix()}
+     * of previous and at w = 1 the same as for current. Use this for rendering between two fixed timestep updates.
+     * Transforms that do not have translate, scale or rotation use 0, 1 and no rotation.
+     * All 16 values of the matrix are written.
+     *
+     * @param previous
+     * @param current
+     * @param w weight, 0 = previous, 1 = current
+     * @param matrix Destination matrix
+     * @param offset Offset into matrix where values are written
+     * @return The matrix
+     */
+    public static float[] interpolate(Transform previous, Transform current, float w, float[] matrix,
+            int offset) {
+        getState(previous, temp, 0);
+        getState(current, temp, TRS.ELEMENTS);
+        interpolate(temp, 0, temp, TRS.ELEMENTS, w, matrix, offset);
+        return matrix;
+    }
+
+    /**
+     * Interpolates between count packed previous and current transform states and stores the matrices packed,
+     * 16 values each. Each state is {@link TRS#ELEMENTS} values, translate, rotation quaternion and scale.
+     * This method uses static temp float arrays and is NOT thread safe.
+     *
+     * @param previous Packed previous states
+     * @param current Packed current states
+     * @param index Index into previous and current where the first state is read
+     * @param w weight, 0 = previous, 1 = current
+     * @param matrices Destination matrices
+     * @param offset Offset into matrices where the first matrix is written
+     * @param count Number of transforms to interpolate
+     */
+    public static void interpolate(float[] previous, float[] current, int index, float w, float[] matrices,
+            int offset, int count) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        for (int i = 0; i < count; i++) {
+            interpolate(previous, index, current, index, w, matrices, offset);
+            index += TRS.ELEMENTS;
+            offset += Matrix.MATRIX_ELEMENTS;
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.INTERPOLATE, count, startTime);
+        }
+    }
+
+    /**
+     * Stores the translate, rotation quaternion and scale of the transform as a packed state.
+     *
+     * @param transform
+     * @param state Destination
+     * @param index Index into state where values are written
+     * @return The state
+     */
+    public static float[] getState(Transform transform, float[] state, int index) {
+        return TRS.set(transform, state, index);
+    }
+
+    private static void interpolate(float[] previous, int pIndex, float[] current, int cIndex, float w,
+            float[] matrix, int offset) {
+        slerp(previous, pIndex + TRS.ROTATION, current, cIndex + TRS.ROTATION, w, temp, TEMP_QUATERNION);
+        float x = temp[TEMP_QUATERNION];
+        float y = temp[TEMP_QUATERNION + 1];
+        float z = temp[TEMP_QUATERNION + 2];
+        float qw = temp[TEMP_QUATERNION + 3];
+        int t1 = pIndex + TRS.TRANSLATE;
+        int t2 = cIndex + TRS.TRANSLATE;
+        int s1 = pIndex + TRS.SCALE;
+        int s2 = cIndex + TRS.SCALE;
+        float sx = previous[s1] + w * (current[s2] - previous[s1]);
+        float sy = previous[s1 + 1] + w * (current[s2 + 1] - previous[s1 + 1]);
+        float sz = previous[s1 + 2] + w * (current[s2 + 2] - previous[s1 + 2]);
+        TRS.toMatrix(previous[t1] + w * (current[t2] - previous[t1]),
+                previous[t1 + 1] + w * (current[t2 + 1] - previous[t1 + 1]),
+                previous[t1 + 2] + w * (current[t2 + 2] - previous[t1 + 2]), x, y, z, qw, sx, sy, sz, matrix, offset);
+    }
+
 }
@@ -1,5 +1,12 @@
 package com.nucleus.vecmath;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import com.nucleus.vecmath.Instrumentation.Operation;
+
 /**
  * This class is NOT thread safe since it uses static temp float arrays
  * 4 x 4 matrix laid out contiguously in memory, translation component is at the 3rd, 7th, and 11th element (row-major)
@@ -16,6 +23,22 @@ public abstract class Matrix extends VecMath {
      */
     public final static int MATRIX_ELEMENTS = 16;
 
+    /**
+     * Number of elements (values) in a 3 x 3 matrix, for instance a normal matrix
+     */
+    public final static int MATRIX3_ELEMENTS = 9;
+
+    /**
+     * Number of values in the temp array used by {@link #invertM(float[], int, float[], int, float[])}
+     */
+    public final static int INVERT_TEMP_ELEMENTS = 44;
+
+    /**
+     * Offset of cofactor pairs and cofactors in the invert temp array, after the transposed source matrix
+     */
+    private final static int PAIRS = 16;
+    private final static int COFACTORS = 28;
+
     /**
      * Identity matrix to be used to read from
      * DO NOT WRITE TO THIS MATRIX
@@ -194,6 +217,7 @@ public abstract class Matrix extends VecMath {
      * @param count Number of vectors to transform
      */
     public final static void transformVec2(float[] matrix, int offset, float[] vec, float[] resultVec, int count) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
         int output = 0;
         int input = 0;
         for (int i = 0; i < count; i++) {
@@ -203,6 +227,9 @@ public abstract class Matrix extends VecMath {
                     + matrix[offset + 7];
             input += 2;
         }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.TRANSFORM_VEC2, count, startTime);
+        }
     }
 
     /**
@@ -216,6 +243,7 @@ public abstract class Matrix extends VecMath {
      * @param count Number of vectors to transform
      */
     public final static void transformVec3(float[] matrix, int offset, float[] vec, float[] resultVec, int count) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
         int output = 0;
         int input = 0;
         for (int i = 0; i < count; i++) {
@@ -227,6 +255,9 @@ public abstract class Matrix extends VecMath {
                     + matrix[offset + 10] * vec[input + 2];
             input += 3;
         }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.TRANSFORM_VEC3, count, startTime);
+        }
     }
 
     /**
@@ -257,6 +288,9 @@ public abstract class Matrix extends VecMath {
      * @param destination
      */
     public final static void mul4(float[] m1, float[] m2, float[] destination) {
+        if (Instrumentation.ENABLED) {
+            Instrumentation.count(Operation.MUL4);
+        }
         // Concatenate matrix 1 with matrix 2, 4*4
         destination[0] = (m1[0] * m2[0] + m1[1] * m2[4] + m1[2] * m2[8] + m1[3] * m2[12]);
         destination[1] = (m1[0] * m2[1] + m1[1] * m2[5] + m1[2] * m2[9] + m1[3] * m2[13]);
@@ -280,6 +314,37 @@ public abstract class Matrix extends VecMath {
 
     }
 
+    /**
+     * Concatenate Matrix m1 with Matrix m2 and store the result in destination matrix, using offsets into the arrays
+     * so that packed matrices can be used.
+     * The destination shall not be the same matrix as m1 or m2.
+     * 
+     * @param m1
+     * @param o1 Offset into m1
+     * @param m2
+     * @param o2 Offset into m2
+     * @param destination
+     * @param dOffset Offset into destination
+     */
+    public final static void mul4(float[] m1, int o1, float[] m2, int o2, float[] destination, int dOffset) {
+        if (Instrumentation.ENABLED) {
+            Instrumentation.count(Operation.MUL4);
+        }
+        for (int row = 0; row < 16; row += 4) {
+            float a0 = m1[o1 + row];
+            float a1 = m1[o1 + row + 1];
+            float a2 = m1[o1 + row + 2];
+            float a3 = m1[o1 + row + 3];
+            destination[dOffset + row] = a0 * m2[o2] + a1 * m2[o2 + 4] + a2 * m2[o2 + 8] + a3 * m2[o2 + 12];
+            destination[dOffset + row + 1] = a0 * m2[o2 + 1] + a1 * m2[o2 + 5] + a2 * m2[o2 + 9]
+                    + a3 * m2[o2 + 13];
+            destination[dOffset + row + 2] = a0 * m2[o2 + 2] + a1 * m2[o2 + 6] + a2 * m2[o2 + 10]
+                    + a3 * m2[o2 + 14];
+            destination[dOffset + row + 3] = a0 * m2[o2 + 3] + a1 * m2[o2 + 7] + a2 * m2[o2 + 11]
+                    + a3 * m2[o2 + 15];
+        }
+    }
+
     /**
      * Multiplies a vec3 with matrix - ie translation will not be included
      * 
@@ -321,6 +386,8 @@ public abstract class Matrix extends VecMath {
 
     /**
      * Inverts a 4 x 4 matrix.
+     * This method allocates temp memory, use {@link #invertM(float[], int, float[], int, float[])} where the
+     * matrix is inverted often.
      *
      * @param mInv the array that holds the output inverted matrix
      * @param mInvOffset an offset into mInv where the inverted matrix is
@@ -330,86 +397,95 @@ public abstract class Matrix extends VecMath {
      * @return true if the matrix could be inverted, false if it could not.
      */
     public static boolean invertM(float[] mInv, int mInvOffset, float[] m, int mOffset) {
-        // Invert a 4 x 4 matrix using Cramer's Rule
-        // array of transpose source matrix
-        float[] src = new float[16];
-
-        // transpose matrix
-        transposeM(src, 0, m, mOffset);
+        return invertM(mInv, mInvOffset, m, mOffset, new float[INVERT_TEMP_ELEMENTS]);
+    }
 
-        // temp array for pairs
-        float[] tmp = new float[12];
+    /**
+     * Inverts a 4 x 4 matrix using the temp array, does not allocate memory.
+     *
+     * @param mInv the array that holds the output inverted matrix
+     * @param mInvOffset an offset into mInv where the inverted matrix is
+     * stored.
+     * @param m the input array
+     * @param mOffset an offset into m where the matrix is read.
+     * @param temp Temp storage, at least {@link #INVERT_TEMP_ELEMENTS} values
+     * @return true if the matrix could be inverted, false if it could not - in which case mInv is not changed.
+     */
+    public static boolean invertM(float[] mInv, int mInvOffset, float[] m, int mOffset, float[] temp) {
+        if (Instrumentation.ENABLED) {
+            Instrumentation.count(Operation.INVERT);
+        }
+        // Invert a 4 x 4 matrix using Cramer's Rule
+        // transpose source matrix into the start of temp
+        transposeM(temp, 0, m, mOffset);
 
         // calculate pairs for first 8 elements (cofactors)
-        tmp[0] = src[10] * src[15];
-        tmp[1] = src[11] * src[14];
-        tmp[2] = src[9] * src[15];
-        tmp[3] = src[11] * src[13];
-        tmp[4] = src[9] * src[14];
-        tmp[5] = src[10] * src[13];
-        tmp[6] = src[8] * src[15];
-        tmp[7] = src[11] * src[12];
-        tmp[8] = src[8] * src[14];
-        tmp[9] = src[10] * src[12];
-        tmp[10] = src[8] * src[13];
-        tmp[11] = src[9] * src[12];
-
-        // Holds the destination matrix while we're building it up.
-        float[] dst = new float[16];
+        temp[PAIRS + 0] = temp[10] * temp[15];
+        temp[PAIRS + 1] = temp[11] * temp[14];
+        temp[PAIRS + 2] = temp[9] * temp[15];
+        temp[PAIRS + 3] = temp[11] * temp[13];
+        temp[PAIRS + 4] = temp[9] * temp[14];
+        temp[PAIRS + 5] = temp[10] * temp[13];
+        temp[PAIRS + 6] = temp[8] * temp[15];
+        temp[PAIRS + 7] = temp[11] * temp[12];
+        temp[PAIRS + 8] = temp[8] * temp[14];
+        temp[PAIRS + 9] = temp[10] * temp[12];
+        temp[PAIRS + 10] = temp[8] * temp[13];
+        temp[PAIRS + 11] = temp[9] * temp[12];
 
         // calculate first 8 elements (cofactors)
-        dst[0] = tmp[0] * src[5] + tmp[3] * src[6] + tmp[4] * src[7];
-        dst[0] -= tmp[1] * src[5] + tmp[2] * src[6] + tmp[5] * src[7];
-        dst[1] = tmp[1] * src[4] + tmp[6] * src[6] + tmp[9] * src[7];
-        dst[1] -= tmp[0] * src[4] + tmp[7] * src[6] + tmp[8] * src[7];
-        dst[2] = tmp[2] * src[4] + tmp[7] * src[5] + tmp[10] * src[7];
-        dst[2] -= tmp[3] * src[4] + tmp[6] * src[5] + tmp[11] * src[7];
-        dst[3] = tmp[5] * src[4] + tmp[8] * src[5] + tmp[11] * src[6];
-        dst[3] -= tmp[4] * src[4] + tmp[9] * src[5] + tmp[10] * src[6];
-        dst[4] = tmp[1] * src[1] + tmp[2] * src[2] + tmp[5] * src[3];
-        dst[4] -= tmp[0] * src[1] + tmp[3] * src[2] + tmp[4] * src[3];
-        dst[5] = tmp[0] * src[0] + tmp[7] * src[2] + tmp[8] * src[3];
-        dst[5] -= tmp[1] * src[0] + tmp[6] * src[2] + tmp[9] * src[3];
-        dst[6] = tmp[3] * src[0] + tmp[6] * src[1] + tmp[11] * src[3];
-        dst[6] -= tmp[2] * src[0] + tmp[7] * src[1] + tmp[10] * src[3];
-        dst[7] = tmp[4] * src[0] + tmp[9] * src[1] + tmp[10] * src[2];
-        dst[7] -= tmp[5] * src[0] + tmp[8] * src[1] + tmp[11] * src[2];
+        temp[COFACTORS + 0] = temp[PAIRS + 0] * temp[5] + temp[PAIRS + 3] * temp[6] + temp[PAIRS + 4] * temp[7];
+        temp[COFACTORS + 0] -= temp[PAIRS + 1] * temp[5] + temp[PAIRS + 2] * temp[6] + temp[PAIRS + 5] * temp[7];
+        temp[COFACTORS + 1] = temp[PAIRS + 1] * temp[4] + temp[PAIRS + 6] * temp[6] + temp[PAIRS + 9] * temp[7];
+        temp[COFACTORS + 1] -= temp[PAIRS + 0] * temp[4] + temp[PAIRS + 7] * temp[6] + temp[PAIRS + 8] * temp[7];
+        temp[COFACTORS + 2] = temp[PAIRS + 2] * temp[4] + temp[PAIRS + 7] * temp[5] + temp[PAIRS + 10] * temp[7];
+        temp[COFACTORS + 2] -= temp[PAIRS + 3] * temp[4] + temp[PAIRS + 6] * temp[5] + temp[PAIRS + 11] * temp[7];
+        temp[COFACTORS + 3] = temp[PAIRS + 5] * temp[4] + temp[PAIRS + 8] * temp[5] + temp[PAIRS + 11] * temp[6];
+        temp[COFACTORS + 3] -= temp[PAIRS + 4] * temp[4] + temp[PAIRS + 9] * temp[5] + temp[PAIRS + 10] * temp[6];
+        temp[COFACTORS + 4] = temp[PAIRS + 1] * temp[1] + temp[PAIRS + 2] * temp[2] + temp[PAIRS + 5] * temp[3];
+        temp[COFACTORS + 4] -= temp[PAIRS + 0] * temp[1] + temp[PAIRS + 3] * temp[2] + temp[PAIRS + 4] * temp[3];
+        temp[COFACTORS + 5] = temp[PAIRS + 0] * temp[0] + temp[PAIRS + 7] * temp[2] + temp[PAIRS + 8] * temp[3];
+        temp[COFACTORS + 5] -= temp[PAIRS + 1] * temp[0] + temp[PAIRS + 6] * temp[2] + temp[PAIRS + 9] * temp[3];
+        temp[COFACTORS + 6] = temp[PAIRS + 3] * temp[0] + temp[PAIRS + 6] * temp[1] + temp[PAIRS + 11] * temp[3];
+        temp[COFACTORS + 6] -= temp[PAIRS + 2] * temp[0] + temp[PAIRS + 7] * temp[1] + temp[PAIRS + 10] * temp[3];
+        temp[COFACTORS + 7] = temp[PAIRS + 4] * temp[0] + temp[PAIRS + 9] * temp[1] + temp[PAIRS + 10] * temp[2];
+        temp[COFACTORS + 7] -= temp[PAIRS + 5] * temp[0] + temp[PAIRS + 8] * temp[1] + temp[PAIRS + 11] * temp[2];
 
         // calculate pairs for second 8 elements (cofactors)
-        tmp[0] = src[2] * src[7];
-        tmp[1] = src[3] * src[6];
-        tmp[2] = src[1] * src[7];
-        tmp[3] = src[3] * src[5];
-        tmp[4] = src[1] * src[6];
-        tmp[5] = src[2] * src[5];
-        tmp[6] = src[0] * src[7];
-        tmp[7] = src[3] * src[4];
-        tmp[8] = src[0] * src[6];
-        tmp[9] = src[2] * src[4];
-        tmp[10] = src[0] * src[5];
-        tmp[11] = src[1] * src[4];
+        temp[PAIRS + 0] = temp[2] * temp[7];
+        temp[PAIRS + 1] = temp[3] * temp[6];
+        temp[PAIRS + 2] = temp[1] * temp[7];
+        temp[PAIRS + 3] = temp[3] * temp[5];
+        temp[PAIRS + 4] = temp[1] * temp[6];
+        temp[PAIRS + 5] = temp[2] * temp[5];
+        temp[PAIRS + 6] = temp[0] * temp[7];
+        temp[PAIRS + 7] = temp[3] * temp[4];
+        temp[PAIRS + 8] = temp[0] * temp[6];
+        temp[PAIRS + 9] = temp[2] * temp[4];
+        temp[PAIRS + 10] = temp[0] * temp[5];
+        temp[PAIRS + 11] = temp[1] * temp[4];
 
         // calculate second 8 elements (cofactors)
-        dst[8] = tmp[0] * src[13] + tmp[3] * src[14] + tmp[4] * src[15];
-        dst[8] -= tmp[1] * src[13] + tmp[2] * src[14] + tmp[5] * src[15];
-        dst[9] = tmp[1] * src[12] + tmp[6] * src[14] + tmp[9] * src[15];
-        dst[9] -= tmp[0] * src[12] + tmp[7] * src[14] + tmp[8] * src[15];
-        dst[10] = tmp[2] * src[12] + tmp[7] * src[13] + tmp[10] * src[15];
-        dst[10] -= tmp[3] * src[12] + tmp[6] * src[13] + tmp[11] * src[15];
-        dst[11] = tmp[5] * src[12] + tmp[8] * src[13] + tmp[11] * src[14];
-        dst[11] -= tmp[4] * src[12] + tmp[9] * src[13] + tmp[10] * src[14];
-        dst[12] = tmp[2] * src[10] + tmp[5] * src[11] + tmp[1] * src[9];
-        dst[12] -= tmp[4] * src[11] + tmp[0] * src[9] + tmp[3] * src[10];
-        dst[13] = tmp[8] * src[11] + tmp[0] * src[8] + tmp[7] * src[10];
-        dst[13] -= tmp[6] * src[10] + tmp[9] * src[11] + tmp[1] * src[8];
-        dst[14] = tmp[6] * src[9] + tmp[11] * src[11] + tmp[3] * src[8];
-        dst[14] -= tmp[10] * src[11] + tmp[2] * src[8] + tmp[7] * src[9];
-        dst[15] = tmp[10] * src[10] + tmp[4] * src[8] + tmp[9] * src[9];
-        dst[15] -= tmp[8] * src[9] + tmp[11] * src[10] + tmp[5] * src[8];
+        temp[COFACTORS + 8] = temp[PAIRS + 0] * temp[13] + temp[PAIRS + 3] * temp[14] + temp[PAIRS + 4] * temp[15];
+        temp[COFACTORS + 8] -= temp[PAIRS + 1] * temp[13] + temp[PAIRS + 2] * temp[14] + temp[PAIRS + 5] * temp[15];
+        temp[COFACTORS + 9] = temp[PAIRS + 1] * temp[12] + temp[PAIRS + 6] * temp[14] + temp[PAIRS + 9] * temp[15];
+        temp[COFACTORS + 9] -= temp[PAIRS + 0] * temp[12] + temp[PAIRS + 7] * temp[14] + temp[PAIRS + 8] * temp[15];
+        temp[COFACTORS + 10] = temp[PAIRS + 2] * temp[12] + temp[PAIRS + 7] * temp[13] + temp[PAIRS + 10] * temp[15];
+        temp[COFACTORS + 10] -= temp[PAIRS + 3] * temp[12] + temp[PAIRS + 6] * temp[13] + temp[PAIRS + 11] * temp[15];
+        temp[COFACTORS + 11] = temp[PAIRS + 5] * temp[12] + temp[PAIRS + 8] * temp[13] + temp[PAIRS + 11] * temp[14];
+        temp[COFACTORS + 11] -= temp[PAIRS + 4] * temp[12] + temp[PAIRS + 9] * temp[13] + temp[PAIRS + 10] * temp[14];
+        temp[COFACTORS + 12] = temp[PAIRS + 2] * temp[10] + temp[PAIRS + 5] * temp[11] + temp[PAIRS + 1] * temp[9];
+        temp[COFACTORS + 12] -= temp[PAIRS + 4] * temp[11] + temp[PAIRS + 0] * temp[9] + temp[PAIRS + 3] * temp[10];
+        temp[COFACTORS + 13] = temp[PAIRS + 8] * temp[11] + temp[PAIRS + 0] * temp[8] + temp[PAIRS + 7] * temp[10];
+        temp[COFACTORS + 13] -= temp[PAIRS + 6] * temp[10] + temp[PAIRS + 9] * temp[11] + temp[PAIRS + 1] * temp[8];
+        temp[COFACTORS + 14] = temp[PAIRS + 6] * temp[9] + temp[PAIRS + 11] * temp[11] + temp[PAIRS + 3] * temp[8];
+        temp[COFACTORS + 14] -= temp[PAIRS + 10] * temp[11] + temp[PAIRS + 2] * temp[8] + temp[PAIRS + 7] * temp[9];
+        temp[COFACTORS + 15] = temp[PAIRS + 10] * temp[10] + temp[PAIRS + 4] * temp[8] + temp[PAIRS + 9] * temp[9];
+        temp[COFACTORS + 15] -= temp[PAIRS + 8] * temp[9] + temp[PAIRS + 11] * temp[10] + temp[PAIRS + 5] * temp[8];
 
         // calculate determinant
-        float det = src[0] * dst[0] + src[1] * dst[1] + src[2] * dst[2] + src[3]
-                * dst[3];
+        float det = temp[0] * temp[COFACTORS + 0] + temp[1] * temp[COFACTORS + 1] + temp[2] * temp[COFACTORS + 2]
+                + temp[3] * temp[COFACTORS + 3];
 
         if (det == 0.0f) {
             return false;
@@ -417,10 +493,114 @@ public abstract class Matrix extends VecMath {
         // calculate matrix inverse
         det = 1 / det;
         for (int j = 0; j < 16; j++)
-            mInv[j + mInvOffset] = dst[j] * det;
+            mInv[j + mInvOffset] = temp[COFACTORS + j] * det;
         return true;
     }
 
+    /**
+     * Calculates the normal matrix, the inverse-transpose of the upper 3 x 3 part of the matrix, and stores
+     * as a row major 3 x 3 matrix in dest.
+     * The cofactor matrix is calculated directly, no 4 x 4 inverse or transpose is done and no memory is allocated.
+     *
+     * @param m The source 4 x 4 matrix
+     * @param mOffset Offset into m where matrix is read
+     * @param dest The destination 3 x 3 matrix, 9 values
+     * @param destOffset Offset into dest where the normal matrix is written
+     * @return true if the normal matrix could be calculated, false if the upper 3 x 3 is singular - in which case
+     * dest is not changed.
+     */
+    public static boolean normalM(float[] m, int mOffset, float[] dest, int destOffset) {
+        if (Instrumentation.ENABLED) {
+            Instrumentation.count(Operation.NORMAL_MATRIX);
+        }
+        float a = m[mOffset];
+        float b = m[mOffset + 1];
+        float c = m[mOffset + 2];
+        float d = m[mOffset + 4];
+        float e = m[mOffset + 5];
+        float f = m[mOffset + 6];
+        float g = m[mOffset + 8];
+        float h = m[mOffset + 9];
+        float i = m[mOffset + 10];
+        float c00 = e * i - f * h;
+        float c01 = f * g - d * i;
+        float c02 = d * h - e * g;
+        float det = a * c00 + b * c01 + c * c02;
+        if (det == 0.0f) {
+            return false;
+        }
+        det = 1 / det;
+        dest[destOffset++] = c00 * det;
+        dest[destOffset++] = c01 * det;
+        dest[destOffset++] = c02 * det;
+        dest[destOffset++] = (c * h - b * i) * det;
+        dest[destOffset++] = (a * i - c * g) * det;
+        dest[destOffset++] = (b * g - a * h) * det;
+        dest[destOffset++] = (b * f - c * e) * det;
+        dest[destOffset++] = (c * d - a * f) * det;
+        dest[destOffset] = (a * e - b * d) * det;
+        return true;
+    }
+
+    /**
+     * Calculates the normal matrix for a matrix that only has rotation and uniform scale, ie no shear or
+     * non uniform scale. The inverse-transpose of s * R is R / s, this is calculated as the upper 3 x 3 divided by
+     * the squared scale - no cofactors are needed.
+     * The result is undefined if the matrix has non uniform scale, use {@link #normalM(float[], int, float[], int)}
+     *
+     * @param m The source 4 x 4 matrix
+     * @param mOffset Offset into m where matrix is read
+     * @param dest The destination 3 x 3 matrix, 9 values
+     * @param destOffset Offset into dest where the normal matrix is written
+     */
+    public static void normalUniformM(float[] m, int mOffset, float[] dest, int destOffset) {
+        if (Instrumentation.ENABLED) {
+            Instrumentation.count(Operation.NORMAL_MATRIX);
+        }
+        float scale = 1 / (m[mOffset] * m[mOffset] + m[mOffset + 1] * m[mOffset + 1]
+                + m[mOffset + 2] * m[mOffset + 2]);
+        dest[destOffset++] = m[mOffset] * scale;
+        dest[destOffset++] = m[mOffset + 1] * scale;
+        dest[destOffset++] = m[mOffset + 2] * scale;
+        dest[destOffset++] = m[mOffset + 4] * scale;
+        dest[destOffset++] = m[mOffset + 5] * scale;
+        dest[destOffset++] = m[mOffset + 6] * scale;
+        dest[destOffset++] = m[mOffset + 8] * scale;
+        dest[destOffset++] = m[mOffset + 9] * scale;
+        dest[destOffset] = m[mOffset + 10] * scale;
+    }
+
+    /**
+     * Batch version of {@link #normalM(float[], int, float[], int)}, calculates the normal matrix for count
+     * matrices that are packed contiguously, 16 values each, and stores the 3 x 3 results packed contiguously,
+     * 9 values each.
+     * If a matrix is singular the corresponding normal matrix is set to zero.
+     *
+     * @param matrices Packed source matrices
+     * @param offset Offset into matrices where the first matrix is read
+     * @param dest Packed destination 3 x 3 matrices
+     * @param destOffset Offset into dest where the first normal matrix is written
+     * @param count Number of matrices
+     * @param uniformScale True if all matrices are known to only have rotation and uniform scale, the cheaper
+     * {@link #normalUniformM(float[], int, float[], int)} is then used.
+     */
+    public static void normalM(float[] matrices, int offset, float[] dest, int destOffset, int count,
+            boolean uniformScale) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        for (int n = 0; n < count; n++) {
+            if (uniformScale) {
+                normalUniformM(matrices, offset, dest, destOffset);
+            } else if (!normalM(matrices, offset, dest, destOffset)) {
+                Arrays.fill(dest, destOffset, destOffset + MATRIX3_ELEMENTS, 0);
+            }
+            offset += MATRIX_ELEMENTS;
+            destOffset += MATRIX3_ELEMENTS;
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.event(Operation.NORMAL_MATRIX, count, startTime);
+        }
+    }
+
     /**
      * Computes an orthographic projection matrix for a left handed coordinate system - row major
      *
@@ -635,6 +815,9 @@ public abstract class Matrix extends VecMath {
      * @param rotation
      */
     public static void rotateM(float[] m, float[] rotation) {
+        if (Instrumentation.ENABLED) {
+            Instrumentation.count(Operation.ROTATE);
+        }
         if (rotation != null) {
             setRotateM(temp, 0, rotation[AxisAngle.ANGLE], rotation[AxisAngle.X], rotation[AxisAngle.Y],
                     rotation[AxisAngle.Z]);
@@ -644,6 +827,120 @@ public abstract class Matrix extends VecMath {
         }
     }
 
+    /**
+     * Rotates the matrix in place around the x axis, same result as {@link #rotateM(float[], float[])} with axis
+     * 1, 0, 0 but only the y and z axis columns are changed - no rotation matrix or multiply is needed.
+     *
+     * @param m The matrix
+     * @param offset Offset into m where the matrix is read and written
+     * @param angle Angle in radians
+     */
+    public static void rotateX(float[] m, int offset, float angle) {
+        if (Instrumentation.ENABLED) {
+            Instrumentation.count(Operation.ROTATE);
+        }
+        rotateColumns(m, offset, 1, 2, (float) Math.cos(angle), (float) Math.sin(angle));
+    }
+
+    /**
+     * Rotates the matrix in place around the y axis, same result as {@link #rotateM(float[], float[])} with axis
+     * 0, 1, 0 but only the x and z axis columns are changed - no rotation matrix or multiply is needed.
+     *
+     * @param m The matrix
+     * @param offset Offset into m where the matrix is read and written
+     * @param angle Angle in radians
+     */
+    public static void rotateY(float[] m, int offset, float angle) {
+        if (Instrumentation.ENABLED) {
+            Instrumentation.count(Operation.ROTATE);
+        }
+        rotateColumns(m, offset, 2, 0, (float) Math.cos(angle), (float) Math.sin(angle));
+    }
+
+    /**
+     * Rotates the matrix in place around the z axis, same result as {@link #rotateM(float[], float[])} with axis
+     * 0, 0, 1 but only the x and y axis columns are changed - no rotation matrix or multiply is needed.
+     *
+     * @param m The matrix
+     * @param offset Offset into m where the matrix is read and written
+     * @param angle Angle in radians
+     */
+    public static void rotateZ(float[] m, int offset, float angle) {
+        if (Instrumentation.ENABLED) {
+            Instrumentation.count(Operation.ROTATE);
+        }
+        rotateColumns(m, offset, 0, 1, (float) Math.cos(angle), (float) Math.sin(angle));
+    }
+
+    /**
+     * Batch version of {@link #rotateX(float[], int, float)}, {@link #rotateY(float[], int, float)} and
+     * {@link #rotateZ(float[], int, float)}, rotates count matrices packed contiguously, 16 values each, by the same
+     * angle. Sin and cos is only calculated once.
+     *
+     * @param matrices Packed matrices
+     * @param offset Offset into matrices where the first matrix is read
+     * @param count Number of matrices
+     * @param axis The axis to rotate around, {@link Axis#X}, {@link Axis#Y} or {@link Axis#Z}
+     * @param angle Angle in radians
+     */
+    public static void rotateAxis(float[] matrices, int offset, int count, Axis axis, float angle) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        int a = (axis.index + 1) % 3;
+        int b = (axis.index + 2) % 3;
+        float cos = (float) Math.cos(angle);
+        float sin = (float) Math.sin(angle);
+        for (int n = 0; n < count; n++) {
+            rotateColumns(matrices, offset, a, b, cos, sin);
+            offset += MATRIX_ELEMENTS;
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.ROTATE, count, startTime);
+        }
+    }
+
+    /**
+     * Batch version of {@link #rotateX(float[], int, float)}, {@link #rotateY(float[], int, float)} and
+     * {@link #rotateZ(float[], int, float)}, rotates count matrices packed contiguously, 16 values each, each
+     * matrix by its own angle.
+     *
+     * @param matrices Packed matrices
+     * @param offset Offset into matrices where the first matrix is read
+     * @param count Number of matrices
+     * @param axis The axis to rotate around, {@link Axis#X}, {@link Axis#Y} or {@link Axis#Z}
+     * @param angles Angles in radians, one per matrix
+     * @param angleIndex Index into angles where the angle of the first matrix is read
+     */
+    public static void rotateAxis(float[] matrices, int offset, int count, Axis axis, float[] angles,
+            int angleIndex) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        int a = (axis.index + 1) % 3;
+        int b = (axis.index + 2) % 3;
+        for (int n = 0; n < count; n++) {
+            float angle = angles[angleIndex++];
+            rotateColumns(matrices, offset, a, b, (float) Math.cos(angle), (float) Math.sin(angle));
+            offset += MATRIX_ELEMENTS;
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.ROTATE, count, startTime);
+        }
+    }
+
+    /**
+     * Rotates column a and b of the matrix, a' = a * cos - b * sin and b' = a * sin + b * cos. This is the same as
+     * multiplying with the rotation matrix created by
+     * {@link #setRotateM(float[], int, float, float, float, float)} for the axis that is not a or b.
+     */
+    private static void rotateColumns(float[] m, int offset, int a, int b, float cos, float sin) {
+        a += offset;
+        b += offset;
+        for (int row = 0; row < 16; row += 4) {
+            float ma = m[a + row];
+            float mb = m[b + row];
+            m[a + row] = ma * cos - mb * sin;
+            m[b + row] = ma * sin + mb * cos;
+        }
+    }
+
     /**
      * Rotates matrix m by angle a (in degrees) around the axis (x, y, z) using left handed coordinate system.
      * 
@@ -656,6 +953,9 @@ public abstract class Matrix extends VecMath {
      */
     public static void setRotateM(float[] rm, int rmOffset,
             float a, float x, float y, float z) {
+        if (Instrumentation.ENABLED) {
+            Instrumentation.count(Operation.SET_ROTATE);
+        }
         rm[rmOffset + 3] = 0;
         rm[rmOffset + 7] = 0;
         rm[rmOffset + 11] = 0;
@@ -836,38 +1136,661 @@ public abstract class Matrix extends VecMath {
     }
 
     /**
-     * Creates a new perspective matrix
+     * Stores the quaternion (x, y, z, w) of the orthonormal rotation matrix (r00 - r22) in quaternion at index.
+     * The quaternion uses the same convention as {@link #setQuaternionRotation(float[], float[])}
+     *
+     * @param quaternion Destination, x, y, z and w
+     * @param index Index into quaternion where values are written
+     */
+    protected static void getQuaternion(float r00, float r01, float r02, float r10, float r11, float r12, float r20,
+            float r21, float r22, float[] quaternion, int index) {
+        float trace = r00 + r11 + r22;
+        float x;
+        float y;
+        float z;
+        float w;
+        if (trace > 0) {
+            float s = 0.5f / (float) Math.sqrt(trace + 1f);
+            w = 0.25f / s;
+            x = (r21 - r12) * s;
+            y = (r02 - r20) * s;
+            z = (r10 - r01) * s;
+        } else if (r00 > r11 && r00 > r22) {
+            float s = 2f * (float) Math.sqrt(1f + r00 - r11 - r22);
+            w = (r21 - r12) / s;
+            x = 0.25f * s;
+            y = (r01 + r10) / s;
+            z = (r02 + r20) / s;
+        } else if (r11 > r22) {
+            float s = 2f * (float) Math.sqrt(1f + r11 - r00 - r22);
+            w = (r02 - r20) / s;
+            x = (r01 + r10) / s;
+            y = 0.25f * s;
+            z = (r12 + r21) / s;
+        } else {
+            float s = 2f * (float) Math.sqrt(1f + r22 - r00 - r11);
+            w = (r10 - r01) / s;
+            x = (r02 + r20) / s;
+            y = (r12 + r21) / s;
+            z = 0.25f * s;
+        }
+        quaternion[index++] = x;
+        quaternion[index++] = y;
+        quaternion[index++] = z;
+        quaternion[index] = w;
+    }
+
+    /**
+     * Decomposes the matrix into translation, rotation (as quaternion) and scale, matrix is treated as
+     * translate * scale * rotate - the same as {@link Transform#updateMatrix()}, ie scale is the length of the
+     * x, y and z rows of the upper 3 x 3. {@link TRS#toMatrix(float[], int, float[], int)} of the result gives
+     * the matrix.
+     * The scale is calculated once and the reciprocal is used to remove scale from the rotation.
+     * If the matrix is mirrored (negative determinant) the x axis scale is negative.
+     * No memory is allocated.
+     *
+     * @param m The matrix to decompose, must not contain shear or projection.
+     * @param mOffset Offset into m where matrix is read
+     * @param translate Destination for x, y and z translation
+     * @param tIndex Index into translate
+     * @param quaternion Destination for rotation quaternion, x, y, z and w
+     * @param qIndex Index into quaternion
+     * @param scale Destination for x, y and z scale
+     * @param sIndex Index into scale
+     */
+    public static void decompose(float[] m, int mOffset, float[] translate, int tIndex, float[] quaternion,
+            int qIndex, float[] scale, int sIndex) {
+        if (Instrumentation.ENABLED) {
+            Instrumentation.count(Operation.DECOMPOSE);
+        }
+        float sx = length(m[mOffset], m[mOffset + 1], m[mOffset + 2]);
+        float sy = length(m[mOffset + 4], m[mOffset + 5], m[mOffset + 6]);
+        float sz = length(m[mOffset + 8], m[mOffset + 9], m[mOffset + 10]);
+        float det = m[mOffset] * (m[mOffset + 5] * m[mOffset + 10] - m[mOffset + 6] * m[mOffset + 9])
+                - m[mOffset + 1] * (m[mOffset + 4] * m[mOffset + 10] - m[mOffset + 6] * m[mOffset + 8])
+                + m[mOffset + 2] * (m[mOffset + 4] * m[mOffset + 9] - m[mOffset + 5] * m[mOffset + 8]);
+        if (det < 0) {
+            sx = -sx;
+        }
+        translate[tIndex++] = m[mOffset + 3];
+        translate[tIndex++] = m[mOffset + 7];
+        translate[tIndex] = m[mOffset + 11];
+        scale[sIndex++] = sx;
+        scale[sIndex++] = sy;
+        scale[sIndex] = sz;
+        float isx = sx != 0 ? 1 / sx : 0;
+        float isy = sy != 0 ? 1 / sy : 0;
+        float isz = sz != 0 ? 1 / sz : 0;
+        getQuaternion(m[mOffset] * isx, m[mOffset + 1] * isx, m[mOffset + 2] * isx,
+                m[mOffset + 4] * isy, m[mOffset + 5] * isy, m[mOffset + 6] * isy,
+                m[mOffset + 8] * isz, m[mOffset + 9] * isz, m[mOffset + 10] * isz, quaternion, qIndex);
+    }
+
+    /**
+     * Batch version of {@link #decompose(float[], int, float[], int, float[], int, float[], int)}, decomposes count
+     * matrices packed contiguously, 16 values each.
+     * Result is stored packed from index 0 in translate (3 values each), quaternion (4 values each) and scale
+     * (3 values each)
+     *
+     * @param matrices Packed source matrices
+     * @param offset Offset into matrices where the first matrix is read
+     * @param translate Packed destination translation
+     * @param quaternion Packed destination rotation quaternions
+     * @param scale Packed destination scale
+     * @param count Number of matrices to decompose
+     */
+    public static void decompose(float[] matrices, int offset, float[] translate, float[] quaternion,
+            float[] scale, int count) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        int vIndex = 0;
+        int qIndex = 0;
+        for (int i = 0; i < count; i++) {
+            decompose(matrices, offset, translate, vIndex, quaternion, qIndex, scale, vIndex);
+            offset += MATRIX_ELEMENTS;
+            vIndex += 3;
+            qIndex += 4;
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.event(Operation.DECOMPOSE, count, startTime);
+        }
+    }
+
+    /**
+     * Re-orthonormalizes the upper 3 x 3 rotation part of the matrix using Gram-Schmidt, use this to remove drift
+     * after many incremental rotations. The matrix is treated as translate * scale * rotate, the same as
+     * {@link Transform#updateMatrix()}, scale is removed from the rows, the first row keeps its direction, the second
+     * row is made perpendicular to the first and the third row is recalculated as first cross second.
+     * Mirroring is kept, translation is not changed.
+     * This is cheaper than {@link #orthonormalizePolar(float[], int, int, boolean)} but error is moved to the second
+     * and third row.
+     *
+     * @param m The matrix
+     * @param offset Offset into m where the matrix is read and written
+     * @param keepScale True to keep the length of each row (the scale), false to set unit length rows. Use
+     * false for pure rotation matrices, drift in axis length is then removed as well.
+     * @return true if the matrix was orthonormalized, false if the first or second row is zero or they are
+     * parallel - in which case the matrix is not changed.
+     */
+    public static boolean orthonormalize(float[] m, int offset, boolean keepScale) {
+        if (Instrumentation.ENABLED) {
+            Instrumentation.count(Operation.ORTHONORMALIZE);
+        }
+        float r00 = m[offset];
+        float r01 = m[offset + 1];
+        float r02 = m[offset + 2];
+        float r10 = m[offset + 4];
+        float r11 = m[offset + 5];
+        float r12 = m[offset + 6];
+        float sx = length(r00, r01, r02);
+        float sy = length(r10, r11, r12);
+        float sz = length(m[offset + 8], m[offset + 9], m[offset + 10]);
+        if (sx == 0 || sy == 0) {
+            return false;
+        }
+        float l = 1 / sx;
+        r00 *= l;
+        r01 *= l;
+        r02 *= l;
+        l = 1 / sy;
+        r10 *= l;
+        r11 *= l;
+        r12 *= l;
+        float dot = r00 * r10 + r01 * r11 + r02 * r12;
+        r10 -= dot * r00;
+        r11 -= dot * r01;
+        r12 -= dot * r02;
+        l = length(r10, r11, r12);
+        if (l == 0) {
+            return false;
+        }
+        l = 1 / l;
+        r10 *= l;
+        r11 *= l;
+        r12 *= l;
+        float r20 = r01 * r12 - r02 * r11;
+        float r21 = r02 * r10 - r00 * r12;
+        float r22 = r00 * r11 - r01 * r10;
+        if (!keepScale) {
+            sx = 1;
+            sy = 1;
+            sz = 1;
+        }
+        // Keep mirroring
+        if (r20 * m[offset + 8] + r21 * m[offset + 9] + r22 * m[offset + 10] < 0) {
+            sz = -sz;
+        }
+        m[offset] = r00 * sx;
+        m[offset + 1] = r01 * sx;
+        m[offset + 2] = r02 * sx;
+        m[offset + 4] = r10 * sy;
+        m[offset + 5] = r11 * sy;
+        m[offset + 6] = r12 * sy;
+        m[offset + 8] = r20 * sz;
+        m[offset + 9] = r21 * sz;
+        m[offset + 10] = r22 * sz;
+        return true;
+    }
+
+    /**
+     * Re-orthonormalizes the upper 3 x 3 rotation part of the matrix using the polar decomposition, this gives the
+     * closest rotation to the drifted matrix and spreads the correction over all axes.
+     * The matrix is treated as translate * scale * rotate, the same as {@link Transform#updateMatrix()}, the scale
+     * is removed from the rows and the Newton iteration R = (R + R^-T) / 2 is run.
+     * Translation is not changed.
+     * For a matrix with small drift 1 or 2 iterations is enough.
+     *
+     * @param m The matrix
+     * @param offset Offset into m where the matrix is read and written
+     * @param iterations Number of iterations
+     * @param keepScale True to restore the length of each row (the scale), false to keep unit length rows.
+     * Use false for pure rotation matrices, drift in axis length is then removed as well.
+     * @return true if the matrix was orthonormalized, false if the upper 3 x 3 is singular - in which case the
+     * matrix is not changed.
+     */
+    public static boolean orthonormalizePolar(float[] m, int offset, int iterations, boolean keepScale) {
+        if (Instrumentation.ENABLED) {
+            Instrumentation.count(Operation.ORTHONORMALIZE);
+        }
+        float sx = length(m[offset], m[offset + 1], m[offset + 2]);
+        float sy = length(m[offset + 4], m[offset + 5], m[offset + 6]);
+        float sz = length(m[offset + 8], m[offset + 9], m[offset + 10]);
+        if (sx == 0 || sy == 0 || sz == 0) {
+            return false;
+        }
+        float isx = 1 / sx;
+        float isy = 1 / sy;
+        float isz = 1 / sz;
+        float a = m[offset] * isx;
+        float b = m[offset + 1] * isx;
+        float c = m[offset + 2] * isx;
+        float d = m[offset + 4] * isy;
+        float e = m[offset + 5] * isy;
+        float f = m[offset + 6] * isy;
+        float g = m[offset + 8] * isz;
+        float h = m[offset + 9] * isz;
+        float i = m[offset + 10] * isz;
+        for (int n = 0; n < iterations; n++) {
+            // Inverse transpose is cofactor matrix / determinant
+            float c00 = e * i - f * h;
+            float c01 = f * g - d * i;
+            float c02 = d * h - e * g;
+            float det = a * c00 + b * c01 + c * c02;
+            if (det == 0.0f) {
+                return false;
+            }
+            det = 0.5f / det;
+            float c10 = c * h - b * i;
+            float c11 = a * i - c * g;
+            float c12 = b * g - a * h;
+            float c20 = b * f - c * e;
+            float c21 = c * d - a * f;
+            float c22 = a * e - b * d;
+            a = a * 0.5f + c00 * det;
+            b = b * 0.5f + c01 * det;
+            c = c * 0.5f + c02 * det;
+            d = d * 0.5f + c10 * det;
+            e = e * 0.5f + c11 * det;
+            f = f * 0.5f + c12 * det;
+            g = g * 0.5f + c20 * det;
+            h = h * 0.5f + c21 * det;
+            i = i * 0.5f + c22 * det;
+        }
+        if (!keepScale) {
+            sx = 1;
+            sy = 1;
+            sz = 1;
+        }
+        m[offset] = a * sx;
+        m[offset + 1] = b * sx;
+        m[offset + 2] = c * sx;
+        m[offset + 4] = d * sy;
+        m[offset + 5] = e * sy;
+        m[offset + 6] = f * sy;
+        m[offset + 8] = g * sz;
+        m[offset + 9] = h * sz;
+        m[offset + 10] = i * sz;
+        return true;
+    }
+
+    /**
+     * Batch version of {@link #orthonormalize(float[], int, boolean)} and
+     * {@link #orthonormalizePolar(float[], int, int, boolean)},
+     * re-orthonormalizes count matrices packed contiguously, 16 values each. Matrices that can not be
+     * orthonormalized are not changed.
+     *
+     * @param matrices Packed matrices
+     * @param offset Offset into matrices where the first matrix is read
+     * @param count Number of matrices
+     * @param iterations Number of polar iterations, or 0 to use Gram-Schmidt
+     * @param keepScale True to keep the length of each row (the scale), false to set unit length rows.
+     */
+    public static void orthonormalize(float[] matrices, int offset, int count, int iterations,
+            boolean keepScale) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        for (int n = 0; n < count; n++) {
+            if (iterations > 0) {
+                orthonormalizePolar(matrices, offset, iterations, keepScale);
+            } else {
+                orthonormalize(matrices, offset, keepScale);
+            }
+            offset += MATRIX_ELEMENTS;
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.event(Operation.ORTHONORMALIZE, count, startTime);
+        }
+    }
+
+    /**
+     * Creates a new perspective matrix, if zfar is -1 an infinite projection is created.
+     * This will allocate a new matrix, use {@link #setProjectionM(float[], int, float, float, float, float)} to
+     * set the projection in an existing matrix.
      * 
      * @return A new matrix with the perspective projection set
      */
     public static float[] createProjectionMatrix(float aspectRatio, float yfov, float zfar, float znear) {
-        float[] projection = Matrix.setIdentity(Matrix.createMatrix(), 0);
+        return setProjectionM(Matrix.createMatrix(), 0, aspectRatio, yfov, zfar, znear);
+    }
+
+    /**
+     * Sets the perspective projection in the destination matrix, all 16 values are written.
+     * If zfar is -1 an infinite projection is set.
+     * 
+     * @param m The destination matrix
+     * @param offset Offset into m where the projection is written
+     * @param aspectRatio
+     * @param yfov Vertical field of view, in radians
+     * @param zfar Far plane, or -1 for infinite projection
+     * @param znear Near plane
+     * @return The destination matrix
+     */
+    public static float[] setProjectionM(float[] m, int offset, float aspectRatio, float yfov, float zfar,
+            float znear) {
+        if (Instrumentation.ENABLED) {
+            Instrumentation.count(Operation.PROJECTION);
+        }
+        float f = (float) (1 / Math.tan(0.5f * yfov));
         if (zfar == -1) {
-            return calculateMatrixInfinite(projection, aspectRatio, yfov, zfar, znear);
+            return setInfinite(m, offset, f / aspectRatio, f, znear);
         }
-        return calculateMatrixFinite(projection, aspectRatio, yfov, zfar, znear);
+        return setFinite(m, offset, f / aspectRatio, f, zfar, znear);
     }
 
+    /**
+     * Batch version of {@link #setProjectionM(float[], int, float, float, float, float)} for a number of frusta that
+     * share aspect ratio and field of view but have different near and far planes, for instance shadow cascades.
+     * The field of view trigonometry is only calculated once.
+     * 
+     * @param m Destination, count matrices are written packed contiguously
+     * @param offset Offset into m where the first projection is written
+     * @param aspectRatio
+     * @param yfov Vertical field of view, in radians
+     * @param planes Packed near and far plane pairs, a far value of -1 gives an infinite projection
+     * @param planeIndex Index into planes where the first near, far pair is read
+     * @param count Number of projection matrices to set
+     */
+    public static void setProjectionM(float[] m, int offset, float aspectRatio, float yfov, float[] planes,
+            int planeIndex, int count) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        float f = (float) (1 / Math.tan(0.5f * yfov));
+        float x = f / aspectRatio;
+        for (int i = 0; i < count; i++) {
+            float znear = planes[planeIndex++];
+            float zfar = planes[planeIndex++];
+            if (zfar == -1) {
+                setInfinite(m, offset, x, f, znear);
+            } else {
+                setFinite(m, offset, x, f, zfar, znear);
+            }
+            offset += MATRIX_ELEMENTS;
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.PROJECTION, count, startTime);
+        }
+    }
+
+    /**
+     * Sets an infinite perspective projection with reversed depth in the destination matrix, all 16 values are
+     * written. Depth is 1 at the near plane and goes towards 0 at infinity, this is intended for a depth range of
+     * 0 to 1 and gives a much better depth precision than the regular infinite projection.
+     * Use with depth test greater and depth buffer cleared to 0.
+     * 
+     * @param m The destination matrix
+     * @param offset Offset into m where the projection is written
+     * @param aspectRatio
+     * @param yfov Vertical field of view, in radians
+     * @param znear Near plane
+     * @return The destination matrix
+     */
+    public static float[] setReversedZInfiniteM(float[] m, int offset, float aspectRatio, float yfov,
+            float znear) {
+        if (Instrumentation.ENABLED) {
+            Instrumentation.count(Operation.PROJECTION);
+        }
+        float f = (float) (1 / Math.tan(0.5f * yfov));
+        setInfinite(m, offset, f / aspectRatio, f, znear);
+        m[offset + 10] = 0;
+        m[offset + 11] = znear;
+        return m;
+    }
+
+    /**
+     * Sets an infinite perspective projection, same as
+     * {@link #setProjectionM(float[], int, float, float, float, float)} with zfar -1
+     *
+     * @param projection The destination matrix
+     * @param aspectRatio
+     * @param yfov Vertical field of view, in radians
+     * @param zfar Not used
+     * @param znear Near plane
+     * @return The destination matrix
+     */
     protected static float[] calculateMatrixInfinite(float[] projection, float aspectRatio, float yfov, float zfar,
             float znear) {
-        projection[0] = (float) (1 / (aspectRatio * Math.tan((0.5f * yfov))));
-        projection[5] = (float) (1 / (Math.tan(0.5f * yfov)));
-        projection[10] = -1f;
-        projection[11] = -2 * znear;
-        projection[14] = -1f;
-        projection[15] = 0;
-        return projection;
+        return setProjectionM(projection, 0, aspectRatio, yfov, -1, znear);
     }
 
+    /**
+     * Sets a perspective projection, same as {@link #setProjectionM(float[], int, float, float, float, float)}
+     *
+     * @param projection The destination matrix
+     * @param aspectRatio
+     * @param yfov Vertical field of view, in radians
+     * @param zfar Far plane
+     * @param znear Near plane
+     * @return The destination matrix
+     */
     protected static float[] calculateMatrixFinite(float[] projection, float aspectRatio, float yfov, float zfar,
             float znear) {
-        projection[0] = (float) (1 / (aspectRatio * Math.tan((0.5f * yfov))));
-        projection[5] = (float) (1 / (Math.tan(0.5f * yfov)));
-        projection[10] = (zfar + znear) / (znear - zfar);
-        projection[11] = (2 * zfar * znear) / (znear - zfar);
-        projection[14] = -1f;
-        projection[15] = 0;
-        return projection;
+        return setProjectionM(projection, 0, aspectRatio, yfov, zfar, znear);
+    }
+
+    private static float[] setInfinite(float[] m, int offset, float x, float y, float znear) {
+        m[offset] = x;
+        m[offset + 1] = 0;
+        m[offset + 2] = 0;
+        m[offset + 3] = 0;
+        m[offset + 4] = 0;
+        m[offset + 5] = y;
+        m[offset + 6] = 0;
+        m[offset + 7] = 0;
+        m[offset + 8] = 0;
+        m[offset + 9] = 0;
+        m[offset + 10] = -1f;
+        m[offset + 11] = -2 * znear;
+        m[offset + 12] = 0;
+        m[offset + 13] = 0;
+        m[offset + 14] = -1f;
+        m[offset + 15] = 0;
+        return m;
+    }
+
+    private static float[] setFinite(float[] m, int offset, float x, float y, float zfar, float znear) {
+        float depth = 1 / (znear - zfar);
+        setInfinite(m, offset, x, y, znear);
+        m[offset + 10] = (zfar + znear) * depth;
+        m[offset + 11] = (2 * zfar * znear) * depth;
+        return m;
+    }
+
+    /**
+     * Creates a direct, native order, FloatBuffer with room for count packed matrices. The buffer is off heap and
+     * can be passed to native code without copying. Matrices are not set to identity.
+     * The FloatBuffer methods in this class use absolute get and put, buffer position and limit is not used or
+     * changed. To use a ByteBuffer create a native order float view using
+     * {@code byteBuffer.order(ByteOrder.nativeOrder()).asFloatBuffer()}, this shares the memory of the ByteBuffer.
+     *
+     * @param count Number of matrices
+     * @return Direct FloatBuffer with capacity for count matrices
+     */
+    public static FloatBuffer createBuffer(int count) {
+        return ByteBuffer.allocateDirect(count * MATRIX_ELEMENTS * 4).order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+    }
+
+    /**
+     * Sets the matrix in the buffer to identity.
+     *
+     * @param matrix The buffer
+     * @param offset Offset into buffer where matrix values are stored.
+     * @return The buffer
+     */
+    public static FloatBuffer setIdentity(FloatBuffer matrix, int offset) {
+        for (int i = 0; i < MATRIX_ELEMENTS; i++) {
+            matrix.put(offset + i, IDENTITY_MATRIX[i]);
+        }
+        return matrix;
+    }
+
+    /**
+     * Copies count matrices from the source array into the destination buffer
+     *
+     * @param source
+     * @param srcPos Offset into source where the first matrix is read
+     * @param dest
+     * @param destPos Offset into dest where the first matrix is written
+     * @param count Number of matrices to copy
+     */
+    public static void copy(float[] source, int srcPos, FloatBuffer dest, int destPos, int count) {
+        int end = srcPos + count * MATRIX_ELEMENTS;
+        while (srcPos < end) {
+            dest.put(destPos++, source[srcPos++]);
+        }
+    }
+
+    /**
+     * Copies count matrices from the source buffer into the destination array
+     *
+     * @param source
+     * @param srcPos Offset into source where the first matrix is read
+     * @param dest
+     * @param destPos Offset into dest where the first matrix is written
+     * @param count Number of matrices to copy
+     */
+    public static void copy(FloatBuffer source, int srcPos, float[] dest, int destPos, int count) {
+        int end = destPos + count * MATRIX_ELEMENTS;
+        while (destPos < end) {
+            dest[destPos++] = source.get(srcPos++);
+        }
+    }
+
+    /**
+     * Concatenate Matrix m1 with Matrix m2 and store the result in destination matrix, same as
+     * {@link #mul4(float[], int, float[], int, float[], int)} using buffers.
+     * The destination shall not be the same matrix as m1 or m2.
+     *
+     * @param m1
+     * @param o1 Offset into m1
+     * @param m2
+     * @param o2 Offset into m2
+     * @param destination
+     * @param dOffset Offset into destination
+     */
+    public static void mul4(FloatBuffer m1, int o1, FloatBuffer m2, int o2, FloatBuffer destination, int dOffset) {
+        if (Instrumentation.ENABLED) {
+            Instrumentation.count(Operation.MUL4);
+        }
+        for (int row = 0; row < 16; row += 4) {
+            float a0 = m1.get(o1 + row);
+            float a1 = m1.get(o1 + row + 1);
+            float a2 = m1.get(o1 + row + 2);
+            float a3 = m1.get(o1 + row + 3);
+            for (int column = 0; column < 4; column++) {
+                destination.put(dOffset + row + column, a0 * m2.get(o2 + column) + a1 * m2.get(o2 + column + 4)
+                        + a2 * m2.get(o2 + column + 8) + a3 * m2.get(o2 + column + 12));
+            }
+        }
+    }
+
+    /**
+     * Concatenates the matrix m1 with count packed matrices in the buffer and stores the result packed in
+     * destination, ie destination[n] = m1 * matrices[n]. Use this to multiply for instance view projection with
+     * model matrices that are stored off heap.
+     * The destination may be the same buffer as matrices.
+     *
+     * @param m1
+     * @param o1 Offset into m1
+     * @param matrices Packed matrices, 16 values each
+     * @param offset Offset into matrices where the first matrix is read
+     * @param destination Packed destination matrices
+     * @param dOffset Offset into destination where the first matrix is written
+     * @param count Number of matrices
+     */
+    public static void mul4(float[] m1, int o1, FloatBuffer matrices, int offset, FloatBuffer destination,
+            int dOffset, int count) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        for (int n = 0; n < count; n++) {
+            for (int column = 0; column < 4; column++) {
+                // Read the column before writing so that destination may be same as matrices
+                float b0 = matrices.get(offset + column);
+                float b1 = matrices.get(offset + column + 4);
+                float b2 = matrices.get(offset + column + 8);
+                float b3 = matrices.get(offset + column + 12);
+                for (int row = 0; row < 16; row += 4) {
+                    destination.put(dOffset + row + column, m1[o1 + row] * b0 + m1[o1 + row + 1] * b1
+                            + m1[o1 + row + 2] * b2 + m1[o1 + row + 3] * b3);
+                }
+            }
+            offset += MATRIX_ELEMENTS;
+            dOffset += MATRIX_ELEMENTS;
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.MUL4, count, startTime);
+        }
+    }
+
+    /**
+     * Inverts a 4 x 4 matrix stored in a buffer, same as {@link #invertM(float[], int, float[], int)}
+     * This method uses static temp arrays and is NOT thread safe.
+     *
+     * @param mInv the buffer that holds the output inverted matrix, may be the same as m
+     * @param mInvOffset an offset into mInv where the inverted matrix is stored.
+     * @param m the input buffer
+     * @param mOffset an offset into m where the matrix is read.
+     * @return true if the matrix could be inverted, false if it could not - mInv is then not changed.
+     */
+    public static boolean invertM(FloatBuffer mInv, int mInvOffset, FloatBuffer m, int mOffset) {
+        copy(m, mOffset, temp, 0, 1);
+        if (!invertM(result, 0, temp, 0)) {
+            return false;
+        }
+        copy(result, 0, mInv, mInvOffset, 1);
+        return true;
+    }
+
+    /**
+     * Multiply count vec3 in the buffer with the matrix, same as
+     * {@link #transformVec3(float[], int, float[], float[], int)} using buffers - translation is not included.
+     * The result vectors are stored packed, result may be the same buffer and index as vec.
+     *
+     * @param matrix
+     * @param offset Offset into matrix where the matrix is read
+     * @param vec Packed vec3
+     * @param vecIndex Index into vec where the first vector is read
+     * @param resultVec Packed result vec3
+     * @param resultIndex Index into resultVec where the first vector is written
+     * @param count Number of vectors to transform
+     */
+    public static void transformVec3(float[] matrix, int offset, FloatBuffer vec, int vecIndex,
+            FloatBuffer resultVec, int resultIndex, int count) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        for (int i = 0; i < count; i++) {
+            float x = vec.get(vecIndex++);
+            float y = vec.get(vecIndex++);
+            float z = vec.get(vecIndex++);
+            resultVec.put(resultIndex++, matrix[offset] * x + matrix[offset + 1] * y + matrix[offset + 2] * z);
+            resultVec.put(resultIndex++, matrix[offset + 4] * x + matrix[offset + 5] * y + matrix[offset + 6] * z);
+            resultVec.put(resultIndex++, matrix[offset + 8] * x + matrix[offset + 9] * y + matrix[offset + 10] * z);
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.TRANSFORM_VEC3, count, startTime);
+        }
+    }
+
+    /**
+     * Multiply count vec2 in the buffer with the matrix, same as
+     * {@link #transformVec2(float[], int, float[], float[], int)} using buffers - translation is included.
+     * The result vectors are stored packed, result may be the same buffer and index as vec.
+     *
+     * @param matrix
+     * @param offset Offset into matrix where the matrix is read
+     * @param vec Packed vec2
+     * @param vecIndex Index into vec where the first vector is read
+     * @param resultVec Packed result vec2
+     * @param resultIndex Index into resultVec where the first vector is written
+     * @param count Number of vectors to transform
+     */
+    public static void transformVec2(float[] matrix, int offset, FloatBuffer vec, int vecIndex,
+            FloatBuffer resultVec, int resultIndex, int count) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        for (int i = 0; i < count; i++) {
+            float x = vec.get(vecIndex++);
+            float y = vec.get(vecIndex++);
+            resultVec.put(resultIndex++, matrix[offset] * x + matrix[offset + 1] * y + matrix[offset + 3]);
+            resultVec.put(resultIndex++, matrix[offset + 4] * x + matrix[offset + 5] * y + matrix[offset + 7]);
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.TRANSFORM_VEC2, count, startTime);
+        }
     }
 
 }
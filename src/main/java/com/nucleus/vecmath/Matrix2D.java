@@ -0,0 +1,352 @@
+package com.nucleus.vecmath;
+
+/**
+ * 2D affine matrix, 2 rows x 3 columns, laid out contiguously in memory using 6 values - row major.
+ * The values are a, b, tx, c, d, ty where x' = a * x + b * y + tx and y' = c * x + d * y + ty, this is the same
+ * as the x and y rows of the 4 x 4 {@link Matrix} without the z components.
+ * Use this for the 2D rendering path, it needs 6 values instead of 16 and about a third of the multiplies.
+ *
+ * @author Richard Sahlin
+ *
+ */
+public abstract class Matrix2D extends VecMath {
+
+    /**
+     * Number of elements (values) in a 2D matrix
+     */
+    public final static int MATRIX_ELEMENTS = 6;
+
+    /**
+     * Index to x translation
+     */
+    public final static int TX = 2;
+    /**
+     * Index to y translation
+     */
+    public final static int TY = 5;
+
+    /**
+     * Identity matrix to be used to read from
+     * DO NOT WRITE TO THIS MATRIX
+     */
+    public final static float[] IDENTITY_MATRIX = Matrix2D.setIdentity(Matrix2D.createMatrix(), 0);
+
+    /**
+     * Simple 2D matrix stack implementation that copies float[] matrix to stack to preserve values, same as
+     * {@link Matrix.MatrixStack} but for 2D matrices.
+     *
+     */
+    public static class MatrixStack {
+
+        private final static int DEFAULT_CAPACITY = 100;
+
+        private float[] matrixStack;
+        private int capacity;
+        private int position = 0;
+
+        /**
+         * Creates a new matrix stack with room for 100 matrices
+         */
+        public MatrixStack() {
+            init(DEFAULT_CAPACITY);
+        }
+
+        /**
+         * Creates a matrix stack with the specified matrix capacity, a value of 100 means that 100 matrices
+         * can be pushed.
+         *
+         * @param capacity Number of matrices to have storage for
+         */
+        public MatrixStack(int capacity) {
+            init(capacity);
+        }
+
+        private void init(int capacity) {
+            matrixStack = new float[MATRIX_ELEMENTS * capacity];
+            this.capacity = capacity;
+        }
+
+        /**
+         * Push a matrix on the stack
+         *
+         * @param The matrix to push
+         */
+        public void push(float[] matrix, int index) {
+            if (position >= capacity * MATRIX_ELEMENTS) {
+                // Out of room on stack - double the size
+                float[] old = matrixStack;
+                int newCapacity = capacity * 2;
+                matrixStack = new float[newCapacity * MATRIX_ELEMENTS];
+                System.arraycopy(old, 0, matrixStack, 0, position);
+                capacity = newCapacity;
+            }
+            System.arraycopy(matrix, index, matrixStack, position, MATRIX_ELEMENTS);
+            position += MATRIX_ELEMENTS;
+        }
+
+        /**
+         * Pop a matrix from the stack
+         *
+         */
+        public void pop(float[] matrix, int index) {
+            position -= MATRIX_ELEMENTS;
+            if (position >= 0) {
+                System.arraycopy(matrixStack, position, matrix, index, MATRIX_ELEMENTS);
+            } else {
+                throw new IllegalArgumentException("Empty stack");
+            }
+        }
+
+    }
+
+    /**
+     * Creates a new, empty, 2D matrix
+     *
+     * @return
+     */
+    public final static float[] createMatrix() {
+        return new float[MATRIX_ELEMENTS];
+    }
+
+    /**
+     * Sets the matrix to identity.
+     *
+     * @param matrix The matrix
+     * @param offset Offset into array where matrix values are stored.
+     * @return The matrix, this is the same as passed into this method
+     */
+    public final static float[] setIdentity(float[] matrix, int offset) {
+        matrix[offset++] = 1f;
+        matrix[offset++] = 0f;
+        matrix[offset++] = 0f;
+        matrix[offset++] = 0f;
+        matrix[offset++] = 1f;
+        matrix[offset] = 0f;
+        return matrix;
+    }
+
+    /**
+     * Copies the source matrix into the destination, returning the destination matrix
+     *
+     * @param source
+     * @param srcPos
+     * @param dest
+     * @param destPos
+     * @return
+     */
+    public final static float[] copy(float[] source, int srcPos, float[] dest, int destPos) {
+        System.arraycopy(source, srcPos, dest, destPos, MATRIX_ELEMENTS);
+        return dest;
+    }
+
+    /**
+     * Sets the matrix to translate * rotate * scale, ie points are scaled, then rotated around z and then translated.
+     *
+     * @param matrix
+     * @param offset Offset into matrix where values are written
+     * @param tx X translation
+     * @param ty Y translation
+     * @param angle Z axis rotation, in radians
+     * @param sx X scale
+     * @param sy Y scale
+     * @return The matrix
+     */
+    public final static float[] set(float[] matrix, int offset, float tx, float ty, float angle, float sx,
+            float sy) {
+        float sin = (float) Math.sin(angle);
+        float cos = (float) Math.cos(angle);
+        matrix[offset++] = cos * sx;
+        matrix[offset++] = -sin * sy;
+        matrix[offset++] = tx;
+        matrix[offset++] = sin * sx;
+        matrix[offset++] = cos * sy;
+        matrix[offset] = ty;
+        return matrix;
+    }
+
+    /**
+     * Concatenate matrix m1 with matrix m2 and store the result in destination matrix, m2 is applied first.
+     * The destination may be the same as m1 or m2.
+     *
+     * @param m1
+     * @param o1 Offset into m1
+     * @param m2
+     * @param o2 Offset into m2
+     * @param destination
+     * @param dOffset Offset into destination
+     */
+    public final static void mul(float[] m1, int o1, float[] m2, int o2, float[] destination, int dOffset) {
+        float a1 = m1[o1];
+        float b1 = m1[o1 + 1];
+        float t1 = m1[o1 + 2];
+        float c1 = m1[o1 + 3];
+        float d1 = m1[o1 + 4];
+        float u1 = m1[o1 + 5];
+        float a2 = m2[o2];
+        float b2 = m2[o2 + 1];
+        float t2 = m2[o2 + 2];
+        float c2 = m2[o2 + 3];
+        float d2 = m2[o2 + 4];
+        float u2 = m2[o2 + 5];
+        destination[dOffset++] = a1 * a2 + b1 * c2;
+        destination[dOffset++] = a1 * b2 + b1 * d2;
+        destination[dOffset++] = a1 * t2 + b1 * u2 + t1;
+        destination[dOffset++] = c1 * a2 + d1 * c2;
+        destination[dOffset++] = c1 * b2 + d1 * d2;
+        destination[dOffset] = c1 * t2 + d1 * u2 + u1;
+    }
+
+    /**
+     * Inverts the 2D affine matrix.
+     *
+     * @param mInv the array that holds the output inverted matrix, may be the same as m
+     * @param mInvOffset an offset into mInv where the inverted matrix is stored.
+     * @param m the input array
+     * @param mOffset an offset into m where the matrix is read.
+     * @return true if the matrix could be inverted, false if it could not.
+     */
+    public static boolean invert(float[] mInv, int mInvOffset, float[] m, int mOffset) {
+        float a = m[mOffset];
+        float b = m[mOffset + 1];
+        float tx = m[mOffset + 2];
+        float c = m[mOffset + 3];
+        float d = m[mOffset + 4];
+        float ty = m[mOffset + 5];
+        float det = a * d - b * c;
+        if (det == 0.0f) {
+            return false;
+        }
+        det = 1 / det;
+        mInv[mInvOffset++] = d * det;
+        mInv[mInvOffset++] = -b * det;
+        mInv[mInvOffset++] = (b * ty - d * tx) * det;
+        mInv[mInvOffset++] = -c * det;
+        mInv[mInvOffset++] = a * det;
+        mInv[mInvOffset] = (c * tx - a * ty) * det;
+        return true;
+    }
+
+    /**
+     * Translate the matrix along x and y axis, translation is added to the current translation.
+     *
+     * @param matrix
+     * @param offset
+     * @param x
+     * @param y
+     */
+    public final static void translate(float[] matrix, int offset, float x, float y) {
+        matrix[offset + TX] += x;
+        matrix[offset + TY] += y;
+    }
+
+    /**
+     * Scales the matrix rows by x and y, same as {@link Matrix#scaleM(float[], int, float, float, float)}
+     *
+     * @param matrix
+     * @param offset
+     * @param x
+     * @param y
+     */
+    public final static void scale(float[] matrix, int offset, float x, float y) {
+        matrix[offset] *= x;
+        matrix[offset + 1] *= x;
+        matrix[offset + 2] *= x;
+        matrix[offset + 3] *= y;
+        matrix[offset + 4] *= y;
+        matrix[offset + 5] *= y;
+    }
+
+    /**
+     * Rotates the matrix around z axis, the rotation is applied before the current matrix, same as concatenating the
+     * matrix with a rotation matrix.
+     *
+     * @param matrix
+     * @param offset
+     * @param angle Angle in radians
+     */
+    public final static void rotate(float[] matrix, int offset, float angle) {
+        float sin = (float) Math.sin(angle);
+        float cos = (float) Math.cos(angle);
+        float a = matrix[offset];
+        float b = matrix[offset + 1];
+        float c = matrix[offset + 3];
+        float d = matrix[offset + 4];
+        matrix[offset] = a * cos + b * sin;
+        matrix[offset + 1] = b * cos - a * sin;
+        matrix[offset + 3] = c * cos + d * sin;
+        matrix[offset + 4] = d * cos - c * sin;
+    }
+
+    /**
+     * Transforms count 2D points using the matrix, source and destination may use a stride so that points can be
+     * interleaved with other values.
+     * Source and destination may be the same array.
+     *
+     * @param matrix
+     * @param offset Offset into matrix where values are read
+     * @param source Source points, x and y
+     * @param sourceIndex Index into source where the first point is read
+     * @param sourceStride Number of values between points in source, 2 for tightly packed points
+     * @param dest Destination points
+     * @param destIndex Index into dest where the first point is written
+     * @param destStride Number of values between points in dest, 2 for tightly packed points
+     * @param count Number of points to transform
+     */
+    public final static void transform(float[] matrix, int offset, float[] source, int sourceIndex,
+            int sourceStride, float[] dest, int destIndex, int destStride, int count) {
+        float a = matrix[offset];
+        float b = matrix[offset + 1];
+        float tx = matrix[offset + 2];
+        float c = matrix[offset + 3];
+        float d = matrix[offset + 4];
+        float ty = matrix[offset + 5];
+        for (int i = 0; i < count; i++) {
+            float x = source[sourceIndex];
+            float y = source[sourceIndex + 1];
+            dest[destIndex] = a * x + b * y + tx;
+            dest[destIndex + 1] = c * x + d * y + ty;
+            sourceIndex += sourceStride;
+            destIndex += destStride;
+        }
+    }
+
+    /**
+     * Stores the 2D matrix as a 4 x 4 {@link Matrix}, all 16 values are written. Z is unchanged.
+     *
+     * @param matrix The 2D matrix
+     * @param offset Offset into matrix where values are read
+     * @param dest The 4 x 4 destination matrix
+     * @param destOffset Offset into dest where values are written
+     * @return The destination matrix
+     */
+    public final static float[] toMatrix(float[] matrix, int offset, float[] dest, int destOffset) {
+        Matrix.setIdentity(dest, destOffset);
+        dest[destOffset] = matrix[offset];
+        dest[destOffset + 1] = matrix[offset + 1];
+        dest[destOffset + 3] = matrix[offset + 2];
+        dest[destOffset + 4] = matrix[offset + 3];
+        dest[destOffset + 5] = matrix[offset + 4];
+        dest[destOffset + 7] = matrix[offset + 5];
+        return dest;
+    }
+
+    /**
+     * Sets the 2D matrix from the x and y rows of the 4 x 4 {@link Matrix}, z components are discarded.
+     *
+     * @param source The 4 x 4 matrix
+     * @param sourceOffset Offset into source where values are read
+     * @param matrix The 2D destination matrix
+     * @param offset Offset into matrix where values are written
+     * @return The 2D matrix
+     */
+    public final static float[] fromMatrix(float[] source, int sourceOffset, float[] matrix, int offset) {
+        matrix[offset++] = source[sourceOffset];
+        matrix[offset++] = source[sourceOffset + 1];
+        matrix[offset++] = source[sourceOffset + 3];
+        matrix[offset++] = source[sourceOffset + 4];
+        matrix[offset++] = source[sourceOffset + 5];
+        matrix[offset] = source[sourceOffset + 7];
+        return matrix;
+    }
+
+}
@@ -0,0 +1,781 @@
+package com.nucleus.vecmath;
+
+/**
+ * Double precision version of {@link Matrix}, use this when the coordinate range is too large for float, for instance
+ * when world positions are hundreds of kilometers from origin.
+ * 4 x 4 matrix laid out contiguously in memory, translation component is at the 3rd, 7th, and 11th element (row-major)
+ * Left handed coordinate system using row-major representation, same layout as {@link Matrix}
+ * This class is NOT thread safe since it uses static temp double arrays
+ *
+ * To send the result to float based consumers (GPU) use the camera relative methods, such as
+ * {@link #toFloatRelative(double[], int, double[], int, float[], int)}, these will subtract the camera origin in
+ * double precision before the values are converted to float.
+ *
+ * @author Richard Sahlin
+ *
+ */
+public abstract class MatrixD extends VecMath {
+
+    /**
+     * Identity matrix to be used to read from
+     * DO NOT WRITE TO THIS MATRIX
+     */
+    public final static double[] IDENTITY_MATRIX = MatrixD.setIdentity(MatrixD.createMatrix(), 0);
+
+    /**
+     * Used to store the transform
+     */
+    transient protected double[] matrix = MatrixD.createMatrix();
+
+    private static double[] temp = new double[16];
+    private static double[] result = new double[16];
+
+    /**
+     * Creates a new, empty, matrix
+     *
+     * @return
+     */
+    public final static double[] createMatrix() {
+        return new double[Matrix.MATRIX_ELEMENTS];
+    }
+
+    /**
+     * Creates a new matrix with values copied from the source matrix
+     *
+     * @param source
+     * @return
+     */
+    public final static double[] createMatrix(double[] source) {
+        double[] matrix = createMatrix();
+        return copy(source, 0, matrix, 0);
+    }
+
+    /**
+     * Creates a new double precision matrix with values copied from the float source matrix
+     *
+     * @param source
+     * @param offset Offset into source where matrix is read
+     * @return
+     */
+    public final static double[] createMatrix(float[] source, int offset) {
+        double[] matrix = createMatrix();
+        for (int i = 0; i < Matrix.MATRIX_ELEMENTS; i++) {
+            matrix[i] = source[offset + i];
+        }
+        return matrix;
+    }
+
+    /**
+     * Sets the matrix to identity.
+     *
+     * @param matrix The matrix
+     * @offset Offset into array where matrix values are stored.
+     * @return The matrix, this is the same as passed into this method
+     */
+    public final static double[] setIdentity(double[] matrix, int offset) {
+        matrix[offset++] = 1;
+        matrix[offset++] = 0;
+        matrix[offset++] = 0;
+        matrix[offset++] = 0;
+
+        matrix[offset++] = 0;
+        matrix[offset++] = 1;
+        matrix[offset++] = 0;
+        matrix[offset++] = 0;
+
+        matrix[offset++] = 0;
+        matrix[offset++] = 0;
+        matrix[offset++] = 1;
+        matrix[offset++] = 0;
+
+        matrix[offset++] = 0;
+        matrix[offset++] = 0;
+        matrix[offset++] = 0;
+        matrix[offset++] = 1;
+        return matrix;
+    }
+
+    /**
+     * Copies the source matrix into the destination, returning the destination matrix
+     *
+     * @param source
+     * @param srcPos
+     * @param dest
+     * @param destPos
+     * @return
+     */
+    public final static double[] copy(double[] source, int srcPos, double[] dest, int destPos) {
+        System.arraycopy(source, srcPos, dest, destPos, Matrix.MATRIX_ELEMENTS);
+        return dest;
+    }
+
+    /**
+     * Scales the matrix
+     *
+     * @param matrix
+     * @param offset
+     * @param scale x, y and z scale
+     */
+    public static void scaleM(double[] matrix, int offset, double[] scale) {
+        if (scale != null) {
+            scaleM(matrix, offset, scale[X], scale[Y], scale[Z]);
+        }
+    }
+
+    /**
+     * Scales matrix m in place by sx, sy, and sz - row major
+     *
+     * @param m matrix to scale
+     * @param mOffset index into m where the matrix starts
+     * @param x scale factor x
+     * @param y scale factor y
+     * @param z scale factor z
+     */
+    public static void scaleM(double[] m, int mOffset, double x, double y, double z) {
+        for (int i = 0; i < 4; i++) {
+            int mi = mOffset + i;
+            m[mi] *= x;
+            m[4 + mi] *= y;
+            m[8 + mi] *= z;
+        }
+    }
+
+    /**
+     * Multiply a number of 3 element vector with a matrix, the resultvectors will be transformed using the matrix
+     * and stored sequentially. Translation is not included, same as
+     * {@link Matrix#transformVec3(float[], int, float[], float[], int)}
+     *
+     * @param matrix
+     * @param offset Offset in matrix array where matrix starts
+     * @param vec
+     * @param resultVec The output vector, this shall not be the same as vec
+     * @param count Number of vectors to transform
+     */
+    public final static void transformVec3(double[] matrix, int offset, double[] vec, double[] resultVec,
+            int count) {
+        int output = 0;
+        int input = 0;
+        for (int i = 0; i < count; i++) {
+            resultVec[output++] = matrix[offset] * vec[input] + matrix[offset + 1] * vec[input + 1]
+                    + matrix[offset + 2] * vec[input + 2];
+            resultVec[output++] = matrix[offset + 4] * vec[input] + matrix[offset + 5] * vec[input + 1]
+                    + matrix[offset + 6] * vec[input + 2];
+            resultVec[output++] = matrix[offset + 8] * vec[input] + matrix[offset + 9] * vec[input + 1]
+                    + matrix[offset + 10] * vec[input + 2];
+            input += 3;
+        }
+    }
+
+    /**
+     * Multiply a number of 3 element points with a matrix, the result points will be transformed using the matrix
+     * and stored sequentially. Translation is included.
+     *
+     * @param matrix
+     * @param offset Offset in matrix array where matrix starts
+     * @param point
+     * @param resultPoint The output points, this shall not be the same as point
+     * @param count Number of points to transform
+     */
+    public final static void transformPoint3(double[] matrix, int offset, double[] point, double[] resultPoint,
+            int count) {
+        int output = 0;
+        int input = 0;
+        for (int i = 0; i < count; i++) {
+            resultPoint[output++] = matrix[offset] * point[input] + matrix[offset + 1] * point[input + 1]
+                    + matrix[offset + 2] * point[input + 2] + matrix[offset + 3];
+            resultPoint[output++] = matrix[offset + 4] * point[input] + matrix[offset + 5] * point[input + 1]
+                    + matrix[offset + 6] * point[input + 2] + matrix[offset + 7];
+            resultPoint[output++] = matrix[offset + 8] * point[input] + matrix[offset + 9] * point[input + 1]
+                    + matrix[offset + 10] * point[input + 2] + matrix[offset + 11];
+            input += 3;
+        }
+    }
+
+    /**
+     * Transposes a 4 x 4 matrix.
+     *
+     * @param mTrans the array that holds the output transposed matrix
+     * @param mTransOffset an offset into mTrans where the transposed matrix is stored.
+     * @param m the input array
+     * @param mOffset an offset into m where the matrix is stored.
+     */
+    public static void transposeM(double[] mTrans, int mTransOffset, double[] m, int mOffset) {
+        for (int i = 0; i < 4; i++) {
+            int mBase = i * 4 + mOffset;
+            mTrans[i + mTransOffset] = m[mBase];
+            mTrans[i + 4 + mTransOffset] = m[mBase + 1];
+            mTrans[i + 8 + mTransOffset] = m[mBase + 2];
+            mTrans[i + 12 + mTransOffset] = m[mBase + 3];
+        }
+    }
+
+    /**
+     * Concatenate Matrix m1 with Matrix m2 and store the result in destination matrix.
+     *
+     * @param m1
+     * @param m2
+     * @param destination
+     */
+    public final static void mul4(double[] m1, double[] m2, double[] destination) {
+        destination[0] = (m1[0] * m2[0] + m1[1] * m2[4] + m1[2] * m2[8] + m1[3] * m2[12]);
+        destination[1] = (m1[0] * m2[1] + m1[1] * m2[5] + m1[2] * m2[9] + m1[3] * m2[13]);
+        destination[2] = (m1[0] * m2[2] + m1[1] * m2[6] + m1[2] * m2[10] + m1[3] * m2[14]);
+        destination[3] = (m1[0] * m2[3] + m1[1] * m2[7] + m1[2] * m2[11] + m1[3] * m2[15]);
+
+        destination[4] = (m1[4] * m2[0] + m1[5] * m2[4] + m1[6] * m2[8] + m1[7] * m2[12]);
+        destination[5] = (m1[4] * m2[1] + m1[5] * m2[5] + m1[6] * m2[9] + m1[7] * m2[13]);
+        destination[6] = (m1[4] * m2[2] + m1[5] * m2[6] + m1[6] * m2[10] + m1[7] * m2[14]);
+        destination[7] = (m1[4] * m2[3] + m1[5] * m2[7] + m1[6] * m2[11] + m1[7] * m2[15]);
+
+        destination[8] = (m1[8] * m2[0] + m1[9] * m2[4] + m1[10] * m2[8] + m1[11] * m2[12]);
+        destination[9] = (m1[8] * m2[1] + m1[9] * m2[5] + m1[10] * m2[9] + m1[11] * m2[13]);
+        destination[10] = (m1[8] * m2[2] + m1[9] * m2[6] + m1[10] * m2[10] + m1[11] * m2[14]);
+        destination[11] = (m1[8] * m2[3] + m1[9] * m2[7] + m1[10] * m2[11] + m1[11] * m2[15]);
+
+        destination[12] = (m1[12] * m2[0] + m1[13] * m2[4] + m1[14] * m2[8] + m1[15] * m2[12]);
+        destination[13] = (m1[12] * m2[1] + m1[13] * m2[5] + m1[14] * m2[9] + m1[15] * m2[13]);
+        destination[14] = (m1[12] * m2[2] + m1[13] * m2[6] + m1[14] * m2[10] + m1[15] * m2[14]);
+        destination[15] = (m1[12] * m2[3] + m1[13] * m2[7] + m1[14] * m2[11] + m1[15] * m2[15]);
+    }
+
+    /**
+     * Multiplies a vec3 with matrix - ie translation will not be included
+     *
+     * @param matrix
+     * @param vec3
+     * @param destVec3
+     */
+    public final static void mulVec3(double[] matrix, double[] vec3, double[] destVec3) {
+        double x = vec3[0];
+        double y = vec3[1];
+        double z = vec3[2];
+        destVec3[0] = x * matrix[0] + y * matrix[1] + z * matrix[2];
+        destVec3[1] = x * matrix[4] + y * matrix[5] + z * matrix[6];
+        destVec3[2] = x * matrix[8] + y * matrix[9] + z * matrix[10];
+    }
+
+    /**
+     * Multiplies a vec4 with matrix
+     *
+     * @param matrix
+     * @param vec4
+     * @param destVec4
+     */
+    public final static void mulVec4(double[] matrix, double[] vec4, double[] destVec4) {
+        double x = vec4[0];
+        double y = vec4[1];
+        double z = vec4[2];
+        double w = vec4[3];
+        destVec4[0] = x * matrix[0] + y * matrix[1] + z * matrix[2] + w * matrix[3];
+        destVec4[1] = x * matrix[4] + y * matrix[5] + z * matrix[6] + w * matrix[7];
+        destVec4[2] = x * matrix[8] + y * matrix[9] + z * matrix[10] + w * matrix[11];
+        destVec4[3] = x * matrix[12] + y * matrix[13] + z * matrix[14] + w * matrix[15];
+    }
+
+    /**
+     * Stores the XYZ translation from the matrix into the translate array at offset
+     *
+     * @param matrix
+     * @param translate
+     * @param offset
+     */
+    public final static void getTranslate(double[] matrix, double[] translate, int offset) {
+        translate[offset++] = matrix[3];
+        translate[offset++] = matrix[7];
+        translate[offset++] = matrix[11];
+    }
+
+    /**
+     * Inverts a 4 x 4 matrix.
+     *
+     * @param mInv the array that holds the output inverted matrix
+     * @param mInvOffset an offset into mInv where the inverted matrix is
+     * stored.
+     * @param m the input array
+     * @param mOffset an offset into m where the matrix is read.
+     * @return true if the matrix could be inverted, false if it could not.
+     */
+    public static boolean invertM(double[] mInv, int mInvOffset, double[] m, int mOffset) {
+        // Invert a 4 x 4 matrix using Cramer's Rule
+        double[] src = new double[16];
+        transposeM(src, 0, m, mOffset);
+        double[] tmp = new double[12];
+
+        // calculate pairs for first 8 elements (cofactors)
+        tmp[0] = src[10] * src[15];
+        tmp[1] = src[11] * src[14];
+        tmp[2] = src[9] * src[15];
+        tmp[3] = src[11] * src[13];
+        tmp[4] = src[9] * src[14];
+        tmp[5] = src[10] * src[13];
+        tmp[6] = src[8] * src[15];
+        tmp[7] = src[11] * src[12];
+        tmp[8] = src[8] * src[14];
+        tmp[9] = src[10] * src[12];
+        tmp[10] = src[8] * src[13];
+        tmp[11] = src[9] * src[12];
+
+        double[] dst = new double[16];
+
+        // calculate first 8 elements (cofactors)
+        dst[0] = tmp[0] * src[5] + tmp[3] * src[6] + tmp[4] * src[7];
+        dst[0] -= tmp[1] * src[5] + tmp[2] * src[6] + tmp[5] * src[7];
+        dst[1] = tmp[1] * src[4] + tmp[6] * src[6] + tmp[9] * src[7];
+        dst[1] -= tmp[0] * src[4] + tmp[7] * src[6] + tmp[8] * src[7];
+        dst[2] = tmp[2] * src[4] + tmp[7] * src[5] + tmp[10] * src[7];
+        dst[2] -= tmp[3] * src[4] + tmp[6] * src[5] + tmp[11] * src[7];
+        dst[3] = tmp[5] * src[4] + tmp[8] * src[5] + tmp[11] * src[6];
+        dst[3] -= tmp[4] * src[4] + tmp[9] * src[5] + tmp[10] * src[6];
+        dst[4] = tmp[1] * src[1] + tmp[2] * src[2] + tmp[5] * src[3];
+        dst[4] -= tmp[0] * src[1] + tmp[3] * src[2] + tmp[4] * src[3];
+        dst[5] = tmp[0] * src[0] + tmp[7] * src[2] + tmp[8] * src[3];
+        dst[5] -= tmp[1] * src[0] + tmp[6] * src[2] + tmp[9] * src[3];
+        dst[6] = tmp[3] * src[0] + tmp[6] * src[1] + tmp[11] * src[3];
+        dst[6] -= tmp[2] * src[0] + tmp[7] * src[1] + tmp[10] * src[3];
+        dst[7] = tmp[4] * src[0] + tmp[9] * src[1] + tmp[10] * src[2];
+        dst[7] -= tmp[5] * src[0] + tmp[8] * src[1] + tmp[11] * src[2];
+
+        // calculate pairs for second 8 elements (cofactors)
+        tmp[0] = src[2] * src[7];
+        tmp[1] = src[3] * src[6];
+        tmp[2] = src[1] * src[7];
+        tmp[3] = src[3] * src[5];
+        tmp[4] = src[1] * src[6];
+        tmp[5] = src[2] * src[5];
+        tmp[6] = src[0] * src[7];
+        tmp[7] = src[3] * src[4];
+        tmp[8] = src[0] * src[6];
+        tmp[9] = src[2] * src[4];
+        tmp[10] = src[0] * src[5];
+        tmp[11] = src[1] * src[4];
+
+        // calculate second 8 elements (cofactors)
+        dst[8] = tmp[0] * src[13] + tmp[3] * src[14] + tmp[4] * src[15];
+        dst[8] -= tmp[1] * src[13] + tmp[2] * src[14] + tmp[5] * src[15];
+        dst[9] = tmp[1] * src[12] + tmp[6] * src[14] + tmp[9] * src[15];
+        dst[9] -= tmp[0] * src[12] + tmp[7] * src[14] + tmp[8] * src[15];
+        dst[10] = tmp[2] * src[12] + tmp[7] * src[13] + tmp[10] * src[15];
+        dst[10] -= tmp[3] * src[12] + tmp[6] * src[13] + tmp[11] * src[15];
+        dst[11] = tmp[5] * src[12] + tmp[8] * src[13] + tmp[11] * src[14];
+        dst[11] -= tmp[4] * src[12] + tmp[9] * src[13] + tmp[10] * src[14];
+        dst[12] = tmp[2] * src[10] + tmp[5] * src[11] + tmp[1] * src[9];
+        dst[12] -= tmp[4] * src[11] + tmp[0] * src[9] + tmp[3] * src[10];
+        dst[13] = tmp[8] * src[11] + tmp[0] * src[8] + tmp[7] * src[10];
+        dst[13] -= tmp[6] * src[10] + tmp[9] * src[11] + tmp[1] * src[8];
+        dst[14] = tmp[6] * src[9] + tmp[11] * src[11] + tmp[3] * src[8];
+        dst[14] -= tmp[10] * src[11] + tmp[2] * src[8] + tmp[7] * src[9];
+        dst[15] = tmp[10] * src[10] + tmp[4] * src[8] + tmp[9] * src[9];
+        dst[15] -= tmp[8] * src[9] + tmp[11] * src[10] + tmp[5] * src[8];
+
+        // calculate determinant
+        double det = src[0] * dst[0] + src[1] * dst[1] + src[2] * dst[2] + src[3] * dst[3];
+
+        if (det == 0.0) {
+            return false;
+        }
+        det = 1 / det;
+        for (int j = 0; j < 16; j++) {
+            mInv[j + mInvOffset] = dst[j] * det;
+        }
+        return true;
+    }
+
+    /**
+     * Computes an orthographic projection matrix for a left handed coordinate system - row major
+     *
+     * @param m returns the result
+     * @param mOffset
+     * @param left
+     * @param right
+     * @param bottom
+     * @param top
+     * @param near
+     * @param far
+     */
+    public static void orthoM(double[] m, int mOffset, double left, double right, double bottom, double top,
+            double near, double far) {
+        if (left == right) {
+            throw new IllegalArgumentException("left == right");
+        }
+        if (bottom == top) {
+            throw new IllegalArgumentException("bottom == top");
+        }
+        if (near == far) {
+            throw new IllegalArgumentException("near == far");
+        }
+        final double r_width = 1.0 / (right - left);
+        final double r_height = 1.0 / (top - bottom);
+        final double r_depth = 1.0 / (far - near);
+        m[mOffset + 0] = 2.0 * r_width;
+        m[mOffset + 5] = 2.0 * r_height;
+        m[mOffset + 10] = 2.0 * r_depth;
+        m[mOffset + 3] = -(right + left) * r_width;
+        m[mOffset + 7] = -(top + bottom) * r_height;
+        m[mOffset + 11] = -(far + near) * r_depth;
+        m[mOffset + 15] = 1.0;
+        m[mOffset + 1] = 0.0;
+        m[mOffset + 2] = 0.0;
+        m[mOffset + 4] = 0.0;
+        m[mOffset + 6] = 0.0;
+        m[mOffset + 8] = 0.0;
+        m[mOffset + 9] = 0.0;
+        m[mOffset + 12] = 0.0;
+        m[mOffset + 13] = 0.0;
+        m[mOffset + 14] = 0.0;
+    }
+
+    /**
+     * Define a projection matrix in terms of six clip planes - row major
+     *
+     * @param m the array that holds the perspective matrix
+     * @param offset the offset into array m where the perspective matrix data is written
+     * @param left
+     * @param right
+     * @param bottom
+     * @param top
+     * @param near
+     * @param far
+     */
+    public static void frustumM(double[] m, int offset, double left, double right, double bottom, double top,
+            double near, double far) {
+        if (left == right) {
+            throw new IllegalArgumentException("left == right");
+        }
+        if (top == bottom) {
+            throw new IllegalArgumentException("top == bottom");
+        }
+        if (near == far) {
+            throw new IllegalArgumentException("near == far");
+        }
+        if (near <= 0.0) {
+            throw new IllegalArgumentException("near <= 0.0");
+        }
+        if (far <= 0.0) {
+            throw new IllegalArgumentException("far <= 0.0");
+        }
+        final double r_width = 1.0 / (right - left);
+        final double r_height = 1.0 / (top - bottom);
+        final double r_depth = 1.0 / (near - far);
+        m[offset + 0] = 2.0 * (near * r_width);
+        m[offset + 5] = 2.0 * (near * r_height);
+        m[offset + 10] = -(far + near) * r_depth;
+        m[offset + 2] = 2.0 * ((right + left) * r_width);
+        m[offset + 6] = (top + bottom) * r_height;
+        m[offset + 11] = 2.0 * (far * near * r_depth);
+        m[offset + 1] = 0.0;
+        m[offset + 3] = 0.0;
+        m[offset + 4] = 0.0;
+        m[offset + 7] = 0.0;
+        m[offset + 8] = 0.0;
+        m[offset + 9] = 0.0;
+        m[offset + 12] = 0.0;
+        m[offset + 13] = 0.0;
+        m[offset + 14] = 1.0;
+        m[offset + 15] = 0.0;
+    }
+
+    /**
+     * Computes the length of a vector
+     *
+     * @param x x coordinate of a vector
+     * @param y y coordinate of a vector
+     * @param z z coordinate of a vector
+     * @return the length of a vector
+     */
+    public static double length(double x, double y, double z) {
+        return Math.sqrt(x * x + y * y + z * z);
+    }
+
+    /**
+     * Translate the matrix along x,y and z axis - row major, translation is stored at index 3,7,11
+     *
+     * @param matrix
+     * @param x
+     * @param y
+     * @param z
+     */
+    public final static void translate(double[] matrix, double x, double y, double z) {
+        matrix[3] += x;
+        matrix[7] += y;
+        matrix[11] += z;
+    }
+
+    /**
+     * Translate the matrix along x,y and z axis. Using row major, translation is stored at index 3,7,11
+     *
+     * @param matrix
+     * @param translate
+     */
+    public final static void translate(double[] matrix, double[] translate) {
+        if (translate != null) {
+            translate(matrix, translate[0], translate[1], translate[2]);
+        }
+    }
+
+    /**
+     * Sets the translation to the specified values - row major, translation is stored at index 3,7,11
+     *
+     * @param matrix
+     * @param translate
+     */
+    public final static void setTranslate(double[] matrix, double[] translate) {
+        matrix[3] = translate[0];
+        matrix[7] = translate[1];
+        matrix[11] = translate[2];
+    }
+
+    /**
+     * Rotates the matrix using the axis angle, see {@link Matrix#rotateM(float[], AxisAngle)}
+     *
+     * @param m
+     * @param axisAngle
+     */
+    public static void rotateM(double[] m, AxisAngle axisAngle) {
+        if (axisAngle != null) {
+            float[] rotation = axisAngle.axisAngle;
+            setRotateM(temp, 0, rotation[AxisAngle.ANGLE], rotation[AxisAngle.X], rotation[AxisAngle.Y],
+                    rotation[AxisAngle.Z]);
+            mul4(m, temp, result);
+            System.arraycopy(result, 0, m, 0, 16);
+        }
+    }
+
+    /**
+     * Sets the rotation of matrix rm to angle a (in radians) around the axis (x, y, z) using left handed coordinate
+     * system.
+     *
+     * @param rm returns the result
+     * @param rmOffset index into rm where the result matrix starts
+     * @param a angle to rotate in radians
+     * @param x axis x
+     * @param y axis y
+     * @param z axis z
+     */
+    public static void setRotateM(double[] rm, int rmOffset, double a, double x, double y, double z) {
+        rm[rmOffset + 3] = 0;
+        rm[rmOffset + 7] = 0;
+        rm[rmOffset + 11] = 0;
+        rm[rmOffset + 12] = 0;
+        rm[rmOffset + 13] = 0;
+        rm[rmOffset + 14] = 0;
+        rm[rmOffset + 15] = 1;
+        double s = Math.sin(a);
+        double c = Math.cos(a);
+        if (1.0 == x && 0.0 == y && 0.0 == z) {
+            rm[rmOffset + 5] = c;
+            rm[rmOffset + 10] = c;
+            rm[rmOffset + 6] = s;
+            rm[rmOffset + 9] = -s;
+            rm[rmOffset + 1] = 0;
+            rm[rmOffset + 2] = 0;
+            rm[rmOffset + 4] = 0;
+            rm[rmOffset + 8] = 0;
+            rm[rmOffset + 0] = 1;
+        } else if (0.0 == x && 1.0 == y && 0.0 == z) {
+            rm[rmOffset + 0] = c;
+            rm[rmOffset + 10] = c;
+            rm[rmOffset + 8] = s;
+            rm[rmOffset + 2] = -s;
+            rm[rmOffset + 1] = 0;
+            rm[rmOffset + 4] = 0;
+            rm[rmOffset + 6] = 0;
+            rm[rmOffset + 9] = 0;
+            rm[rmOffset + 5] = 1;
+        } else if (0.0 == x && 0.0 == y && 1.0 == z) {
+            rm[rmOffset + 0] = c;
+            rm[rmOffset + 5] = c;
+            rm[rmOffset + 1] = s;
+            rm[rmOffset + 4] = -s;
+            rm[rmOffset + 2] = 0;
+            rm[rmOffset + 6] = 0;
+            rm[rmOffset + 8] = 0;
+            rm[rmOffset + 9] = 0;
+            rm[rmOffset + 10] = 1;
+        } else {
+            double len = length(x, y, z);
+            if (1.0 != len) {
+                double recipLen = 1.0 / len;
+                x *= recipLen;
+                y *= recipLen;
+                z *= recipLen;
+            }
+            double nc = 1.0 - c;
+            double xy = x * y;
+            double yz = y * z;
+            double zx = z * x;
+            double xs = x * s;
+            double ys = y * s;
+            double zs = z * s;
+            rm[rmOffset + 0] = x * x * nc + c;
+            rm[rmOffset + 4] = xy * nc - zs;
+            rm[rmOffset + 8] = zx * nc + ys;
+            rm[rmOffset + 1] = xy * nc + zs;
+            rm[rmOffset + 5] = y * y * nc + c;
+            rm[rmOffset + 9] = yz * nc - xs;
+            rm[rmOffset + 2] = zx * nc - ys;
+            rm[rmOffset + 6] = yz * nc + xs;
+            rm[rmOffset + 10] = z * z * nc + c;
+        }
+    }
+
+    /**
+     * Extract the scale from the given matrix
+     *
+     * @param matrix
+     * @param result
+     */
+    public static final void getScale(double[] matrix, double[] result) {
+        result[0] = Math.sqrt(matrix[0] * matrix[0] + matrix[4] * matrix[4] + matrix[8] * matrix[8]);
+        result[1] = Math.sqrt(matrix[1] * matrix[1] + matrix[5] * matrix[5] + matrix[9] * matrix[9]);
+        result[2] = Math.sqrt(matrix[2] * matrix[2] + matrix[6] * matrix[6] + matrix[10] * matrix[10]);
+    }
+
+    /**
+     * Sets the given matrix to the rotation of the quaternion.
+     *
+     * @param quaternion x, y, z and w
+     * @param matrix
+     * @return The matrix with rotation set from quaternion, only rotation values changed.
+     */
+    public final static double[] setQuaternionRotation(double[] quaternion, double[] matrix) {
+        if (quaternion != null) {
+            double norm = quaternion[0] * quaternion[0] + quaternion[1] * quaternion[1]
+                    + quaternion[2] * quaternion[2] + quaternion[3] * quaternion[3];
+            double s = (norm == 1) ? 2 : (norm > 0) ? 2 / norm : 0;
+            double xs = quaternion[0] * s;
+            double ys = quaternion[1] * s;
+            double zs = quaternion[2] * s;
+            double xx = quaternion[0] * xs;
+            double xy = quaternion[0] * ys;
+            double xz = quaternion[0] * zs;
+            double xw = quaternion[3] * xs;
+            double yy = quaternion[1] * ys;
+            double yz = quaternion[1] * zs;
+            double yw = quaternion[3] * ys;
+            double zz = quaternion[2] * zs;
+            double zw = quaternion[3] * zs;
+
+            matrix[0] = 1 - (yy + zz);
+            matrix[1] = (xy - zw);
+            matrix[2] = (xz + yw);
+            matrix[4] = (xy + zw);
+            matrix[5] = 1 - (xx + zz);
+            matrix[6] = (yz - xw);
+            matrix[8] = (xz - yw);
+            matrix[9] = (yz + xw);
+            matrix[10] = 1 - (xx + yy);
+        }
+        return matrix;
+    }
+
+    /**
+     * Creates a new perspective matrix, if zfar is -1 an infinite projection is created.
+     *
+     * @return A new matrix with the perspective projection set
+     */
+    public static double[] createProjectionMatrix(double aspectRatio, double yfov, double zfar, double znear) {
+        double[] projection = MatrixD.setIdentity(MatrixD.createMatrix(), 0);
+        double f = 1 / Math.tan(0.5 * yfov);
+        projection[0] = f / aspectRatio;
+        projection[5] = f;
+        if (zfar == -1) {
+            projection[10] = -1;
+            projection[11] = -2 * znear;
+        } else {
+            projection[10] = (zfar + znear) / (znear - zfar);
+            projection[11] = (2 * zfar * znear) / (znear - zfar);
+        }
+        projection[14] = -1;
+        projection[15] = 0;
+        return projection;
+    }
+
+    /**
+     * Converts the double precision matrix to float, storing in destination.
+     * Use this for matrices that do not contain large translations, for instance projection.
+     *
+     * @param matrix
+     * @param offset Offset into matrix where values are read
+     * @param dest
+     * @param destOffset Offset into dest where float matrix is written
+     * @return The destination matrix
+     */
+    public final static float[] toFloat(double[] matrix, int offset, float[] dest, int destOffset) {
+        for (int i = 0; i < Matrix.MATRIX_ELEMENTS; i++) {
+            dest[destOffset + i] = (float) matrix[offset + i];
+        }
+        return dest;
+    }
+
+    /**
+     * Converts the double precision matrix to float, with the translation made relative to origin.
+     * The origin is subtracted from the translation in double precision before conversion, this means that
+     * objects close to the origin (normally the camera position) will keep full float precision regardless of how
+     * far from world origin they are.
+     * The view matrix used together with the result shall be rotation only, ie not contain the camera translation.
+     *
+     * @param matrix World matrix, row major
+     * @param offset Offset into matrix where values are read
+     * @param origin The relative origin, normally camera world position, x, y and z
+     * @param originIndex Index into origin where x,y and z is read
+     * @param dest
+     * @param destOffset Offset into dest where float matrix is written
+     * @return The destination matrix
+     */
+    public final static float[] toFloatRelative(double[] matrix, int offset, double[] origin, int originIndex,
+            float[] dest, int destOffset) {
+        toFloat(matrix, offset, dest, destOffset);
+        dest[destOffset + 3] = (float) (matrix[offset + 3] - origin[originIndex + X]);
+        dest[destOffset + 7] = (float) (matrix[offset + 7] - origin[originIndex + Y]);
+        dest[destOffset + 11] = (float) (matrix[offset + 11] - origin[originIndex + Z]);
+        return dest;
+    }
+
+    /**
+     * Batch version of {@link #toFloatRelative(double[], int, double[], int, float[], int)}, converts count
+     * contiguously packed double matrices to float matrices relative to origin.
+     *
+     * @param matrices Packed world matrices, 16 values per matrix
+     * @param offset Offset into matrices where first matrix is read
+     * @param origin The relative origin, normally camera world position, x, y and z
+     * @param originIndex Index into origin where x,y and z is read
+     * @param dest Packed destination float matrices
+     * @param destOffset Offset into dest where first matrix is written
+     * @param count Number of matrices to convert
+     */
+    public final static void toFloatRelative(double[] matrices, int offset, double[] origin, int originIndex,
+            float[] dest, int destOffset, int count) {
+        double ox = origin[originIndex + X];
+        double oy = origin[originIndex + Y];
+        double oz = origin[originIndex + Z];
+        for (int i = 0; i < count; i++) {
+            toFloat(matrices, offset, dest, destOffset);
+            dest[destOffset + 3] = (float) (matrices[offset + 3] - ox);
+            dest[destOffset + 7] = (float) (matrices[offset + 7] - oy);
+            dest[destOffset + 11] = (float) (matrices[offset + 11] - oz);
+            offset += Matrix.MATRIX_ELEMENTS;
+            destOffset += Matrix.MATRIX_ELEMENTS;
+        }
+    }
+
+    /**
+     * Concatenates the double precision matrices m1 and m2 and stores the result, relative to origin, as a float
+     * matrix. Use this to compose for instance parent and local world matrices in double and emit the camera
+     * relative float matrix in one call.
+     * This method is NOT thread safe since it uses static temp double arrays
+     *
+     * @param m1
+     * @param m2
+     * @param origin The relative origin, normally camera world position, x, y and z
+     * @param originIndex Index into origin where x,y and z is read
+     * @param dest
+     * @param destOffset Offset into dest where float matrix is written
+     * @return The destination matrix
+     */
+    public final static float[] mul4Relative(double[] m1, double[] m2, double[] origin, int originIndex,
+            float[] dest, int destOffset) {
+        mul4(m1, m2, result);
+        return toFloatRelative(result, 0, origin, originIndex, dest, destOffset);
+    }
+
+}
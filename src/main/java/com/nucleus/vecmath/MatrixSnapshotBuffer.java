@@ -0,0 +1,136 @@
+package com.nucleus.vecmath;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock free triple buffered snapshots of packed matrices, for one writer thread (simulation) and one reader thread
+ * (render).
+ * The writer fills the buffer returned by {@link #getWriteBuffer()} and calls {@link #publish()}, the reader calls
+ * {@link #acquire()} to get the latest published buffer. Publish and acquire is a single atomic swap of a buffer
+ * index, no values are copied and neither thread is blocked. The reader buffer stays the same, and consistent, until
+ * the next acquire.
+ * The write buffer is not cleared or copied from the last published buffer, the writer shall write all values
+ * that are used by the reader before publishing.
+ *
+ * @author Richard Sahlin
+ *
+ */
+public class MatrixSnapshotBuffer {
+
+    private final static int BUFFERS = 3;
+    /**
+     * Set in state when the middle buffer has been published and not yet acquired
+     */
+    private final static int FRESH = 4;
+    private final static int INDEX_MASK = 3;
+
+    private final float[][] buffers = new float[BUFFERS][];
+    private final long[] frames = new long[BUFFERS];
+    private final int count;
+    /**
+     * Index of the middle buffer, that is exchanged by writer and reader, plus {@link #FRESH}
+     */
+    private final AtomicInteger state = new AtomicInteger(1);
+    /**
+     * Only accessed by the writer
+     */
+    private int back = 0;
+    private long frame = 0;
+    /**
+     * Only accessed by the reader
+     */
+    private int front = 2;
+
+    /**
+     * Creates a snapshot buffer for count matrices, all matrices are set to identity.
+     *
+     * @param count Number of matrices
+     */
+    public MatrixSnapshotBuffer(int count) {
+        this.count = count;
+        for (int i = 0; i < BUFFERS; i++) {
+            buffers[i] = new float[count * Matrix.MATRIX_ELEMENTS];
+            for (int m = 0; m < count; m++) {
+                Matrix.setIdentity(buffers[i], m * Matrix.MATRIX_ELEMENTS);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of matrices in each buffer
+     *
+     * @return
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the buffer to write matrices into, matrix n is at offset n * 16.
+     * Only call this from the writer thread, the returned buffer changes after {@link #publish()}
+     *
+     * @return
+     */
+    public float[] getWriteBuffer() {
+        return buffers[back];
+    }
+
+    /**
+     * Copies the matrix into the write buffer, only call this from the writer thread.
+     *
+     * @param index Index of the matrix in the buffer
+     * @param matrix Source matrix
+     * @param offset Offset into matrix where values are read
+     */
+    public void set(int index, float[] matrix, int offset) {
+        System.arraycopy(matrix, offset, buffers[back], index * Matrix.MATRIX_ELEMENTS, Matrix.MATRIX_ELEMENTS);
+    }
+
+    /**
+     * Updates the matrix of the transform and copies it into the write buffer, only call this from the writer
+     * thread.
+     *
+     * @param index Index of the matrix in the buffer
+     * @param transform
+     */
+    public void set(int index, Transform transform) {
+        set(index, transform.updateMatrix(), 0);
+    }
+
+    /**
+     * Publishes the write buffer to the reader, only call this from the writer thread.
+     * After this call the writer gets a new buffer from {@link #getWriteBuffer()}
+     *
+     * @return The frame number of the published buffer, starting at 1
+     */
+    public long publish() {
+        frames[back] = ++frame;
+        back = state.getAndSet(back | FRESH) & INDEX_MASK;
+        return frame;
+    }
+
+    /**
+     * Returns the latest published buffer, only call this from the reader thread. The values in the returned
+     * buffer are not changed by the writer until acquire is called again.
+     * Matrix n is at offset n * 16. If nothing has been published all matrices are identity.
+     *
+     * @return
+     */
+    public float[] acquire() {
+        if ((state.get() & FRESH) != 0) {
+            front = state.getAndSet(front) & INDEX_MASK;
+        }
+        return buffers[front];
+    }
+
+    /**
+     * Returns the frame number of the buffer returned by the last call to {@link #acquire()}, only call this from
+     * the reader thread.
+     *
+     * @return The frame number as returned by {@link #publish()}, or 0 if nothing has been acquired.
+     */
+    public long getReadFrame() {
+        return frames[front];
+    }
+
+}
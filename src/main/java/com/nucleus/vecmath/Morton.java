@@ -0,0 +1,286 @@
+package com.nucleus.vecmath;
+
+import java.util.Arrays;
+
+import com.nucleus.vecmath.Instrumentation.Operation;
+
+/**
+ * Static utilities for Morton (Z-order) codes of points and sorting by code.
+ * Points that are close in space get codes that are close, sorting points by code and reordering the data so that
+ * it is stored in code order gives sequential memory access for spatial operations.
+ * 3D codes use 10 bits per axis, 30 bits in total, 2D codes use 16 bits per axis and all 32 bits - codes are
+ * compared as unsigned.
+ *
+ * @author Richard Sahlin
+ *
+ */
+public final class Morton extends VecMath {
+
+    /**
+     * Max quantized value of each axis in a 3D code
+     */
+    public final static int MAX_3D = (1 << 10) - 1;
+    /**
+     * Max quantized value of each axis in a 2D code
+     */
+    public final static int MAX_2D = (1 << 16) - 1;
+
+    private final static int RADIX_BITS = 8;
+    /**
+     * Number of values in the histogram passed to {@link #sort(int[], int[], int, int[], int[], int[])}
+     */
+    public final static int RADIX = 1 << RADIX_BITS;
+
+    private Morton() {
+    }
+
+    /**
+     * Returns the 3D Morton code, bits of x, y and z are interleaved with x in the lowest bit.
+     *
+     * @param x 0 - {@link #MAX_3D}
+     * @param y 0 - {@link #MAX_3D}
+     * @param z 0 - {@link #MAX_3D}
+     * @return The code
+     */
+    public static int encode(int x, int y, int z) {
+        return spread3(x) | (spread3(y) << 1) | (spread3(z) << 2);
+    }
+
+    /**
+     * Returns the 2D Morton code, bits of x and y are interleaved with x in the lowest bit.
+     *
+     * @param x 0 - {@link #MAX_2D}
+     * @param y 0 - {@link #MAX_2D}
+     * @return The code
+     */
+    public static int encode(int x, int y) {
+        return spread2(x) | (spread2(y) << 1);
+    }
+
+    /**
+     * Decodes a 3D Morton code
+     *
+     * @param code
+     * @param result x, y and z
+     * @param index Index into result where values are written
+     * @return The result
+     */
+    public static int[] decode3(int code, int[] result, int index) {
+        result[index] = compact3(code);
+        result[index + 1] = compact3(code >>> 1);
+        result[index + 2] = compact3(code >>> 2);
+        return result;
+    }
+
+    /**
+     * Decodes a 2D Morton code
+     *
+     * @param code
+     * @param result x and y
+     * @param index Index into result where values are written
+     * @return The result
+     */
+    public static int[] decode2(int code, int[] result, int index) {
+        result[index] = compact2(code);
+        result[index + 1] = compact2(code >>> 1);
+        return result;
+    }
+
+    /**
+     * Calculates the 3D Morton code for count packed vec3 points within the bounds, points outside the bounds are
+     * clamped.
+     *
+     * @param points Packed x, y, z points
+     * @param index Index into points where the first point is read
+     * @param min Min x, y and z of bounds
+     * @param max Max x, y and z of bounds
+     * @param codes Destination codes
+     * @param codeIndex Index into codes where the first code is written
+     * @param count Number of points
+     */
+    public static void encode3(float[] points, int index, float[] min, float[] max, int[] codes, int codeIndex,
+            int count) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        float sx = scale(min[X], max[X], MAX_3D);
+        float sy = scale(min[Y], max[Y], MAX_3D);
+        float sz = scale(min[Z], max[Z], MAX_3D);
+        for (int i = 0; i < count; i++) {
+            codes[codeIndex++] = encode(quantize(points[index], min[X], sx, MAX_3D),
+                    quantize(points[index + 1], min[Y], sy, MAX_3D),
+                    quantize(points[index + 2], min[Z], sz, MAX_3D));
+            index += 3;
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.MORTON, count, startTime);
+        }
+    }
+
+    /**
+     * Calculates the 2D Morton code for count packed vec2 points within the bounds, points outside the bounds are
+     * clamped.
+     *
+     * @param points Packed x, y points
+     * @param index Index into points where the first point is read
+     * @param min Min x and y of bounds
+     * @param max Max x and y of bounds
+     * @param codes Destination codes
+     * @param codeIndex Index into codes where the first code is written
+     * @param count Number of points
+     */
+    public static void encode2(float[] points, int index, float[] min, float[] max, int[] codes, int codeIndex,
+            int count) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        float sx = scale(min[X], max[X], MAX_2D);
+        float sy = scale(min[Y], max[Y], MAX_2D);
+        for (int i = 0; i < count; i++) {
+            codes[codeIndex++] = encode(quantize(points[index], min[X], sx, MAX_2D),
+                    quantize(points[index + 1], min[Y], sy, MAX_2D));
+            index += 2;
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.MORTON, count, startTime);
+        }
+    }
+
+    /**
+     * Sorts count codes in ascending unsigned order, using a stable radix sort, and moves the values in indices
+     * together with the codes. Fill indices with 0 to count - 1 before sorting to get the sorted order of the
+     * points, then use {@link #reorder(float[], int, int[], int, float[])} to reorder points and attributes.
+     * Only the passes needed for the largest code are done, no memory is allocated.
+     *
+     * @param codes Codes to sort, from index 0
+     * @param indices Companion values moved with the codes
+     * @param count Number of codes
+     * @param tempCodes Temp storage, at least count values
+     * @param tempIndices Temp storage, at least count values
+     * @param histogram Temp storage, at least {@link #RADIX} values
+     */
+    public static void sort(int[] codes, int[] indices, int count, int[] tempCodes, int[] tempIndices,
+            int[] histogram) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        int bits = 0;
+        for (int i = 0; i < count; i++) {
+            bits |= codes[i];
+        }
+        int[] srcCodes = codes;
+        int[] srcIndices = indices;
+        int[] destCodes = tempCodes;
+        int[] destIndices = tempIndices;
+        for (int shift = 0; shift < 32 && (bits >>> shift) != 0; shift += RADIX_BITS) {
+            Arrays.fill(histogram, 0, RADIX, 0);
+            for (int i = 0; i < count; i++) {
+                histogram[(srcCodes[i] >>> shift) & (RADIX - 1)]++;
+            }
+            int sum = 0;
+            for (int i = 0; i < RADIX; i++) {
+                int c = histogram[i];
+                histogram[i] = sum;
+                sum += c;
+            }
+            for (int i = 0; i < count; i++) {
+                int code = srcCodes[i];
+                int dest = histogram[(code >>> shift) & (RADIX - 1)]++;
+                destCodes[dest] = code;
+                destIndices[dest] = srcIndices[i];
+            }
+            int[] swap = srcCodes;
+            srcCodes = destCodes;
+            destCodes = swap;
+            swap = srcIndices;
+            srcIndices = destIndices;
+            destIndices = swap;
+        }
+        if (srcCodes != codes) {
+            System.arraycopy(srcCodes, 0, codes, 0, count);
+            System.arraycopy(srcIndices, 0, indices, 0, count);
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.MORTON, count, startTime);
+        }
+    }
+
+    /**
+     * Gathers count packed values in the sorted order, dest[n] = source[order[n]], with components values for each
+     * element. Use this to reorder points and companion attributes after
+     * {@link #sort(int[], int[], int, int[], int[], int[])}
+     * Source and dest shall not be the same array.
+     *
+     * @param source Packed source values
+     * @param components Number of values per element, eg 3 for vec3
+     * @param order Index of the source element for each destination element
+     * @param count Number of elements
+     * @param dest Packed destination values
+     */
+    public static void reorder(float[] source, int components, int[] order, int count, float[] dest) {
+        int d = 0;
+        for (int i = 0; i < count; i++) {
+            int s = order[i] * components;
+            for (int c = 0; c < components; c++) {
+                dest[d++] = source[s + c];
+            }
+        }
+    }
+
+    /**
+     * Gathers count int values in the sorted order, dest[n] = source[order[n]]
+     * Source and dest shall not be the same array.
+     *
+     * @param source
+     * @param order Index of the source element for each destination element
+     * @param count Number of elements
+     * @param dest
+     */
+    public static void reorder(int[] source, int[] order, int count, int[] dest) {
+        for (int i = 0; i < count; i++) {
+            dest[i] = source[order[i]];
+        }
+    }
+
+    private static float scale(float min, float max, int steps) {
+        if (max <= min) {
+            throw new IllegalArgumentException("Invalid bounds, max " + max + " <= min " + min);
+        }
+        return steps / (max - min);
+    }
+
+    private static int quantize(float value, float min, float scale, int steps) {
+        float v = (value - min) * scale;
+        if (v <= 0) {
+            return 0;
+        }
+        return v >= steps ? steps : (int) v;
+    }
+
+    private static int spread3(int v) {
+        v &= 0x3ff;
+        v = (v | (v << 16)) & 0x030000ff;
+        v = (v | (v << 8)) & 0x0300f00f;
+        v = (v | (v << 4)) & 0x030c30c3;
+        return (v | (v << 2)) & 0x09249249;
+    }
+
+    private static int compact3(int v) {
+        v &= 0x09249249;
+        v = (v | (v >>> 2)) & 0x030c30c3;
+        v = (v | (v >>> 4)) & 0x0300f00f;
+        v = (v | (v >>> 8)) & 0x030000ff;
+        return (v | (v >>> 16)) & 0x3ff;
+    }
+
+    private static int spread2(int v) {
+        v &= 0xffff;
+        v = (v | (v << 8)) & 0x00ff00ff;
+        v = (v | (v << 4)) & 0x0f0f0f0f;
+        v = (v | (v << 2)) & 0x33333333;
+        return (v | (v << 1)) & 0x55555555;
+    }
+
+    private static int compact2(int v) {
+        v &= 0x55555555;
+        v = (v | (v >>> 1)) & 0x33333333;
+        v = (v | (v >>> 2)) & 0x0f0f0f0f;
+        v = (v | (v >>> 4)) & 0x00ff00ff;
+        return (v | (v >>> 8)) & 0xffff;
+    }
+
+}
@@ -0,0 +1,408 @@
+package com.nucleus.vecmath;
+
+import java.util.stream.IntStream;
+
+import com.nucleus.vecmath.Instrumentation.Operation;
+
+/**
+ * A ray with origin and direction, used for picking and intersection tests.
+ * The ray can be created from normalized device coordinates, for instance a mouse or touch position, and a
+ * view-projection matrix. The inverse view-projection is kept and only recalculated when the view-projection changes.
+ * Intersection methods do not allocate memory, one instance per thread shall be used.
+ *
+ * @author Richard Sahlin
+ *
+ */
+public class Ray extends VecMath {
+
+    /**
+     * Index to nearest hit distance in intersection result array
+     */
+    public final static int DISTANCE = 0;
+    /**
+     * Index to barycentric u (weight of second triangle vertex) in triangle intersection result array
+     */
+    public final static int U = 1;
+    /**
+     * Index to barycentric v (weight of third triangle vertex) in triangle intersection result array
+     */
+    public final static int V = 2;
+    /**
+     * Number of values in triangle intersection result, distance, u and v
+     */
+    public final static int TRIANGLE_RESULT_ELEMENTS = 3;
+
+    /**
+     * Triangles that are parallel to the ray within this epsilon are not hit
+     */
+    public final static float EPSILON = 0.0000001f;
+
+    /**
+     * Number of values for each packed axis aligned bounding box, min x,y,z and max x,y,z
+     */
+    public final static int AABB_ELEMENTS = 6;
+
+    /**
+     * Ray origin, x, y and z
+     */
+    public final float[] origin = new float[3];
+    /**
+     * Normalized ray direction, x, y and z
+     */
+    public final float[] direction = new float[3];
+    /**
+     * 1 / direction, used by slab test
+     */
+    protected final float[] invDirection = new float[3];
+
+    private final float[] viewProjection = Matrix.createMatrix();
+    private final float[] inverse = Matrix.createMatrix();
+    private final float[] invertTemp = new float[Matrix.INVERT_TEMP_ELEMENTS];
+    private boolean inverseValid = false;
+    private final float[] near = new float[3];
+    private final float[] far = new float[3];
+
+    /**
+     * Creates a new ray at origin pointing along positive z axis.
+     */
+    public Ray() {
+        set(0, 0, 0, 0, 0, 1);
+    }
+
+    /**
+     * Creates a new ray with the specified origin and direction
+     *
+     * @param origin x, y and z of the origin
+     * @param direction x, y and z of the direction, does not need to be normalized.
+     */
+    public Ray(float[] origin, float[] direction) {
+        set(origin[X], origin[Y], origin[Z], direction[X], direction[Y], direction[Z]);
+    }
+
+    /**
+     * Sets the origin and direction of the ray, direction is normalized.
+     *
+     * @param ox
+     * @param oy
+     * @param oz
+     * @param dx
+     * @param dy
+     * @param dz
+     */
+    public void set(float ox, float oy, float oz, float dx, float dy, float dz) {
+        origin[X] = ox;
+        origin[Y] = oy;
+        origin[Z] = oz;
+        float len = Matrix.length(dx, dy, dz);
+        if (len == 0) {
+            throw new IllegalArgumentException("Invalid direction, length is 0");
+        }
+        direction[X] = dx / len;
+        direction[Y] = dy / len;
+        direction[Z] = dz / len;
+        invDirection[X] = 1 / direction[X];
+        invDirection[Y] = 1 / direction[Y];
+        invDirection[Z] = 1 / direction[Z];
+    }
+
+    /**
+     * Sets the ray, in world space, from the normalized device coordinates x and y, using depth range -1 to 1.
+     * The inverse of the view-projection is calculated if the view-projection has changed since last call.
+     *
+     * @param viewProjection The view-projection matrix
+     * @param offset Offset into viewProjection where matrix is read
+     * @param ndcX Normalized device x, -1 to 1
+     * @param ndcY Normalized device y, -1 to 1
+     * @return True if the ray could be set, false if the view-projection could not be inverted.
+     */
+    public boolean setFromNDC(float[] viewProjection, int offset, float ndcX, float ndcY) {
+        return setFromNDC(viewProjection, offset, ndcX, ndcY, -1, 0);
+    }
+
+    /**
+     * Sets the ray, in world space, from the normalized device coordinates x and y.
+     * The ray origin is at the near depth and direction is towards the far depth, any depth values that are in front
+     * of the camera can be used - for reversed depth use 1 and 0.5 since 0 is at infinity.
+     * The inverse of the view-projection is calculated if the view-projection has changed since last call.
+     *
+     * @param viewProjection The view-projection matrix
+     * @param offset Offset into viewProjection where matrix is read
+     * @param ndcX Normalized device x, -1 to 1
+     * @param ndcY Normalized device y, -1 to 1
+     * @param nearZ Normalized device depth of the ray origin
+     * @param farZ Normalized device depth of a point further along the ray
+     * @return True if the ray could be set, false if the view-projection could not be inverted.
+     */
+    public boolean setFromNDC(float[] viewProjection, int offset, float ndcX, float ndcY, float nearZ,
+            float farZ) {
+        if (!inverseValid || !equals(viewProjection, offset)) {
+            System.arraycopy(viewProjection, offset, this.viewProjection, 0, Matrix.MATRIX_ELEMENTS);
+            inverseValid = Matrix.invertM(inverse, 0, viewProjection, offset, invertTemp);
+            if (!inverseValid) {
+                return false;
+            }
+        }
+        return setFromNDCInverse(inverse, 0, ndcX, ndcY, nearZ, farZ);
+    }
+
+    /**
+     * Sets the ray, in world space, from the normalized device coordinates x and y using an already inverted
+     * view-projection matrix.
+     *
+     * @param inverseViewProjection The inverted view-projection matrix
+     * @param offset Offset into inverseViewProjection where matrix is read
+     * @param ndcX Normalized device x, -1 to 1
+     * @param ndcY Normalized device y, -1 to 1
+     * @param nearZ Normalized device depth of the ray origin
+     * @param farZ Normalized device depth of a point further along the ray
+     * @return True if the ray could be set, false if the unprojected points are not valid.
+     */
+    public boolean setFromNDCInverse(float[] inverseViewProjection, int offset, float ndcX, float ndcY,
+            float nearZ, float farZ) {
+        if (!unproject(inverseViewProjection, offset, ndcX, ndcY, nearZ, near)
+                || !unproject(inverseViewProjection, offset, ndcX, ndcY, farZ, far)) {
+            return false;
+        }
+        set(near[X], near[Y], near[Z], far[X] - near[X], far[Y] - near[Y], far[Z] - near[Z]);
+        return true;
+    }
+
+    /**
+     * Unprojects the normalized device coordinate using the inverse view-projection and stores x, y and z in result.
+     *
+     * @param inv Inverse view-projection
+     * @param offset Offset into inv where matrix is read
+     * @param x
+     * @param y
+     * @param z
+     * @param result
+     * @return false if w is 0
+     */
+    private static boolean unproject(float[] inv, int offset, float x, float y, float z, float[] result) {
+        float w = inv[offset + 12] * x + inv[offset + 13] * y + inv[offset + 14] * z + inv[offset + 15];
+        if (w == 0) {
+            return false;
+        }
+        w = 1 / w;
+        result[X] = (inv[offset] * x + inv[offset + 1] * y + inv[offset + 2] * z + inv[offset + 3]) * w;
+        result[Y] = (inv[offset + 4] * x + inv[offset + 5] * y + inv[offset + 6] * z + inv[offset + 7]) * w;
+        result[Z] = (inv[offset + 8] * x + inv[offset + 9] * y + inv[offset + 10] * z + inv[offset + 11]) * w;
+        return true;
+    }
+
+    private boolean equals(float[] matrix, int offset) {
+        for (int i = 0; i < Matrix.MATRIX_ELEMENTS; i++) {
+            if (viewProjection[i] != matrix[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tests the ray against count axis aligned bounding boxes using the slab method and returns the index of the
+     * nearest box that is hit.
+     * Boxes are packed, 6 values each, as min x,y,z and max x,y,z. If the ray origin is inside a box the distance is
+     * 0. No memory is allocated.
+     *
+     * @param bounds Packed axis aligned bounding boxes
+     * @param offset Offset into bounds where the first box is read
+     * @param count Number of boxes to test
+     * @param maxDistance Max distance along the ray, boxes further away are not hit.
+     * @param result The distance to the nearest hit is stored at resultIndex + {@link #DISTANCE}
+     * @param resultIndex Index into result
+     * @return Index of the nearest box that is hit, 0 to count - 1, or -1 if no box is hit.
+     */
+    public int intersectAABB(float[] bounds, int offset, int count, float maxDistance, float[] result,
+            int resultIndex) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        final float ox = origin[X];
+        final float oy = origin[Y];
+        final float oz = origin[Z];
+        final float ix = invDirection[X];
+        final float iy = invDirection[Y];
+        final float iz = invDirection[Z];
+        float nearest = maxDistance;
+        int hit = -1;
+        for (int i = 0; i < count; i++) {
+            // An axis parallel ray with origin on a face gives 0 * Infinity = NaN, Math.min and max keep the NaN
+            // and the comparisons drop it - so that axis does not limit the hit.
+            float t1 = (bounds[offset] - ox) * ix;
+            float t2 = (bounds[offset + 3] - ox) * ix;
+            float tNear = Math.min(t1, t2);
+            float tFar = Math.max(t1, t2);
+            float tMin = tNear > Float.NEGATIVE_INFINITY ? tNear : Float.NEGATIVE_INFINITY;
+            float tMax = tFar < Float.POSITIVE_INFINITY ? tFar : Float.POSITIVE_INFINITY;
+            t1 = (bounds[offset + 1] - oy) * iy;
+            t2 = (bounds[offset + 4] - oy) * iy;
+            tNear = Math.min(t1, t2);
+            tFar = Math.max(t1, t2);
+            tMin = tNear > tMin ? tNear : tMin;
+            tMax = tFar < tMax ? tFar : tMax;
+            t1 = (bounds[offset + 2] - oz) * iz;
+            t2 = (bounds[offset + 5] - oz) * iz;
+            tNear = Math.min(t1, t2);
+            tFar = Math.max(t1, t2);
+            tMin = tNear > tMin ? tNear : tMin;
+            tMax = tFar < tMax ? tFar : tMax;
+            if (tMax >= 0 && tMin <= tMax) {
+                float distance = tMin > 0 ? tMin : 0;
+                if (distance < nearest) {
+                    nearest = distance;
+                    hit = i;
+                }
+            }
+            offset += AABB_ELEMENTS;
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.INTERSECT_AABB, count, startTime);
+        }
+        if (hit >= 0) {
+            result[resultIndex + DISTANCE] = nearest;
+        }
+        return hit;
+    }
+
+    /**
+     * Tests the ray against indexed triangles using the Moller-Trumbore algorithm and returns the index of the
+     * nearest triangle that is hit. Triangles are hit from both sides.
+     * Vertex position x, y and z is read at the start of each vertex, vertices may be interleaved with other
+     * attributes by using a stride larger than 3. Each triangle uses 3 indices.
+     * No memory is allocated.
+     *
+     * @param vertices Vertex array with x,y,z position at the start of each vertex
+     * @param stride Number of values between vertices, 3 for tightly packed positions
+     * @param indices Triangle indices, 3 per triangle
+     * @param firstTriangle First triangle to test
+     * @param triangleCount Number of triangles to test
+     * @param maxDistance Max distance along the ray, triangles further away are not hit.
+     * @param result The distance, barycentric u and v of the nearest hit is stored at resultIndex + {@link #DISTANCE},
+     * {@link #U} and {@link #V}
+     * @param resultIndex Index into result
+     * @return Index of the nearest triangle that is hit, or -1 if no triangle is hit.
+     */
+    public int intersectTriangles(float[] vertices, int stride, int[] indices, int firstTriangle,
+            int triangleCount, float maxDistance, float[] result, int resultIndex) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        final float ox = origin[X];
+        final float oy = origin[Y];
+        final float oz = origin[Z];
+        final float dx = direction[X];
+        final float dy = direction[Y];
+        final float dz = direction[Z];
+        float nearest = maxDistance;
+        float nearestU = 0;
+        float nearestV = 0;
+        int hit = -1;
+        int index = firstTriangle * 3;
+        int end = (firstTriangle + triangleCount) * 3;
+        for (; index < end; index += 3) {
+            int v0 = indices[index] * stride;
+            int v1 = indices[index + 1] * stride;
+            int v2 = indices[index + 2] * stride;
+            float x0 = vertices[v0];
+            float y0 = vertices[v0 + 1];
+            float z0 = vertices[v0 + 2];
+            // Edges from vertex 0
+            float e1x = vertices[v1] - x0;
+            float e1y = vertices[v1 + 1] - y0;
+            float e1z = vertices[v1 + 2] - z0;
+            float e2x = vertices[v2] - x0;
+            float e2y = vertices[v2 + 1] - y0;
+            float e2z = vertices[v2 + 2] - z0;
+            // p = direction x e2
+            float px = dy * e2z - dz * e2y;
+            float py = dz * e2x - dx * e2z;
+            float pz = dx * e2y - dy * e2x;
+            float det = e1x * px + e1y * py + e1z * pz;
+            if (det > -EPSILON && det < EPSILON) {
+                continue;
+            }
+            float invDet = 1 / det;
+            float tx = ox - x0;
+            float ty = oy - y0;
+            float tz = oz - z0;
+            float u = (tx * px + ty * py + tz * pz) * invDet;
+            if (u < 0 || u > 1) {
+                continue;
+            }
+            // q = t x e1
+            float qx = ty * e1z - tz * e1y;
+            float qy = tz * e1x - tx * e1z;
+            float qz = tx * e1y - ty * e1x;
+            float v = (dx * qx + dy * qy + dz * qz) * invDet;
+            if (v < 0 || u + v > 1) {
+                continue;
+            }
+            float distance = (e2x * qx + e2y * qy + e2z * qz) * invDet;
+            if (distance >= 0 && distance < nearest) {
+                nearest = distance;
+                nearestU = u;
+                nearestV = v;
+                hit = index / 3;
+            }
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.INTERSECT_TRIANGLES, triangleCount, startTime);
+        }
+        if (hit >= 0) {
+            result[resultIndex + DISTANCE] = nearest;
+            result[resultIndex + U] = nearestU;
+            result[resultIndex + V] = nearestV;
+        }
+        return hit;
+    }
+
+    /**
+     * Parallel version of {@link #intersectTriangles(float[], int, int[], int, int, float, float[], int)}, the
+     * triangles are split into a number of ranges that are tested in parallel using the common fork join pool.
+     * Use this for large meshes, a small result array is allocated per call for the ranges.
+     *
+     * @param vertices Vertex array with x,y,z position at the start of each vertex
+     * @param stride Number of values between vertices, 3 for tightly packed positions
+     * @param indices Triangle indices, 3 per triangle
+     * @param firstTriangle First triangle to test
+     * @param triangleCount Number of triangles to test
+     * @param maxDistance Max distance along the ray, triangles further away are not hit.
+     * @param result The distance, barycentric u and v of the nearest hit is stored at resultIndex + {@link #DISTANCE},
+     * {@link #U} and {@link #V}
+     * @param resultIndex Index into result
+     * @param ranges Number of triangle ranges to split into, normally number of available processors.
+     * @return Index of the nearest triangle that is hit, or -1 if no triangle is hit.
+     */
+    public int intersectTriangles(float[] vertices, int stride, int[] indices, int firstTriangle,
+            int triangleCount, float maxDistance, float[] result, int resultIndex, int ranges) {
+        if (ranges <= 1 || triangleCount < ranges) {
+            return intersectTriangles(vertices, stride, indices, firstTriangle, triangleCount, maxDistance, result,
+                    resultIndex);
+        }
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        final int[] hits = new int[ranges];
+        final float[] rangeResult = new float[ranges * TRIANGLE_RESULT_ELEMENTS];
+        final int rangeSize = (triangleCount + ranges - 1) / ranges;
+        IntStream.range(0, ranges).parallel().forEach(range -> {
+            int start = range * rangeSize;
+            int count = Math.min(rangeSize, triangleCount - start);
+            hits[range] = count > 0 ? intersectTriangles(vertices, stride, indices, firstTriangle + start, count,
+                    maxDistance, rangeResult, range * TRIANGLE_RESULT_ELEMENTS) : -1;
+        });
+        if (Instrumentation.ENABLED) {
+            Instrumentation.event(Operation.INTERSECT_TRIANGLES, triangleCount, startTime);
+        }
+        int hit = -1;
+        int nearest = 0;
+        for (int range = 0; range < ranges; range++) {
+            if (hits[range] >= 0 && (hit < 0 || rangeResult[range * TRIANGLE_RESULT_ELEMENTS
+                    + DISTANCE] < rangeResult[nearest * TRIANGLE_RESULT_ELEMENTS + DISTANCE])) {
+                hit = hits[range];
+                nearest = range;
+            }
+        }
+        if (hit >= 0) {
+            System.arraycopy(rangeResult, nearest * TRIANGLE_RESULT_ELEMENTS, result, resultIndex,
+                    TRIANGLE_RESULT_ELEMENTS);
+        }
+        return hit;
+    }
+
+}
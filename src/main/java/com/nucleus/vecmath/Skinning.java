@@ -0,0 +1,257 @@
+package com.nucleus.vecmath;
+
+import java.util.stream.IntStream;
+
+import com.nucleus.vecmath.Instrumentation.Operation;
+
+/**
+ * Static utilities for linear blend and dual quaternion skinning on packed arrays.
+ * Each vertex has up to 4 joint influences, stored as 4 joint indices and 4 weights per vertex - unused influences
+ * shall have weight 0. The joint palette is packed {@link Matrix} layout matrices, 16 values per joint, that transform
+ * from bind pose to skinned pose.
+ * The joint matrices are blended using the weights and each vertex is transformed once, instead of transforming the
+ * vertex once per joint influence.
+ *
+ * @author Richard Sahlin
+ *
+ */
+public class Skinning {
+
+    /**
+     * Max number of joint influences per vertex
+     */
+    public final static int JOINTS_PER_VERTEX = 4;
+
+    /**
+     * Skins count vertices from start, writing positions and normals in one pass.
+     * Normals are transformed by the blended upper 3 x 3 and normalized, this is correct for rotation and uniform
+     * scale.
+     *
+     * @param positions Bind pose positions, x, y and z per vertex
+     * @param normals Bind pose normals, x, y and z per vertex, or null
+     * @param joints Joint indices, 4 per vertex
+     * @param weights Joint weights, 4 per vertex
+     * @param palette Packed joint matrices, 16 values per joint
+     * @param outPositions Destination for skinned positions, shall not be the same as positions
+     * @param outNormals Destination for skinned normals, or null
+     * @param start Index of the first vertex to skin
+     * @param count Number of vertices to skin
+     */
+    public static void skin(float[] positions, float[] normals, int[] joints, float[] weights, float[] palette,
+            float[] outPositions, float[] outNormals, int start, int count) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        int end = start + count;
+        for (int vertex = start; vertex < end; vertex++) {
+            float m0 = 0, m1 = 0, m2 = 0, m3 = 0;
+            float m4 = 0, m5 = 0, m6 = 0, m7 = 0;
+            float m8 = 0, m9 = 0, m10 = 0, m11 = 0;
+            int influence = vertex * JOINTS_PER_VERTEX;
+            for (int i = 0; i < JOINTS_PER_VERTEX; i++) {
+                float w = weights[influence + i];
+                if (w != 0) {
+                    int j = joints[influence + i] * Matrix.MATRIX_ELEMENTS;
+                    m0 += palette[j] * w;
+                    m1 += palette[j + 1] * w;
+                    m2 += palette[j + 2] * w;
+                    m3 += palette[j + 3] * w;
+                    m4 += palette[j + 4] * w;
+                    m5 += palette[j + 5] * w;
+                    m6 += palette[j + 6] * w;
+                    m7 += palette[j + 7] * w;
+                    m8 += palette[j + 8] * w;
+                    m9 += palette[j + 9] * w;
+                    m10 += palette[j + 10] * w;
+                    m11 += palette[j + 11] * w;
+                }
+            }
+            int index = vertex * 3;
+            float x = positions[index];
+            float y = positions[index + 1];
+            float z = positions[index + 2];
+            outPositions[index] = m0 * x + m1 * y + m2 * z + m3;
+            outPositions[index + 1] = m4 * x + m5 * y + m6 * z + m7;
+            outPositions[index + 2] = m8 * x + m9 * y + m10 * z + m11;
+            if (normals != null) {
+                x = normals[index];
+                y = normals[index + 1];
+                z = normals[index + 2];
+                float nx = m0 * x + m1 * y + m2 * z;
+                float ny = m4 * x + m5 * y + m6 * z;
+                float nz = m8 * x + m9 * y + m10 * z;
+                float len = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+                if (len > 0) {
+                    len = 1 / len;
+                }
+                outNormals[index] = nx * len;
+                outNormals[index + 1] = ny * len;
+                outNormals[index + 2] = nz * len;
+            }
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.SKIN, count, startTime);
+        }
+    }
+
+    /**
+     * Parallel version of {@link #skin(float[], float[], int[], float[], float[], float[], float[], int, int)}, the
+     * vertices are split into a number of ranges that are skinned in parallel using the common fork join pool.
+     * Use this for large meshes.
+     *
+     * @param positions Bind pose positions, x, y and z per vertex
+     * @param normals Bind pose normals, x, y and z per vertex, or null
+     * @param joints Joint indices, 4 per vertex
+     * @param weights Joint weights, 4 per vertex
+     * @param palette Packed joint matrices, 16 values per joint
+     * @param outPositions Destination for skinned positions, shall not be the same as positions
+     * @param outNormals Destination for skinned normals, or null
+     * @param start Index of the first vertex to skin
+     * @param count Number of vertices to skin
+     * @param ranges Number of vertex ranges to split into, normally number of available processors.
+     */
+    public static void skin(float[] positions, float[] normals, int[] joints, float[] weights, float[] palette,
+            float[] outPositions, float[] outNormals, int start, int count, int ranges) {
+        if (ranges <= 1 || count < ranges) {
+            skin(positions, normals, joints, weights, palette, outPositions, outNormals, start, count);
+            return;
+        }
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        final int rangeSize = (count + ranges - 1) / ranges;
+        IntStream.range(0, ranges).parallel().forEach(range -> {
+            int first = range * rangeSize;
+            int rangeCount = Math.min(rangeSize, count - first);
+            if (rangeCount > 0) {
+                skin(positions, normals, joints, weights, palette, outPositions, outNormals, start + first,
+                        rangeCount);
+            }
+        });
+        if (Instrumentation.ENABLED) {
+            Instrumentation.event(Operation.SKIN, count, startTime);
+        }
+    }
+
+    /**
+     * Dual quaternion skinning of count vertices from start, writing positions and normals in one pass.
+     * The joint palette is packed {@link DualQuaternion} values, 8 per joint, this avoids the volume loss
+     * (candy-wrapper) of linear blend skinning and uses half the palette memory of matrices.
+     * Scale is not supported.
+     *
+     * @param positions Bind pose positions, x, y and z per vertex
+     * @param normals Bind pose normals, x, y and z per vertex, or null
+     * @param joints Joint indices, 4 per vertex
+     * @param weights Joint weights, 4 per vertex
+     * @param palette Packed joint dual quaternions, 8 values per joint
+     * @param outPositions Destination for skinned positions, shall not be the same as positions
+     * @param outNormals Destination for skinned normals, or null
+     * @param start Index of the first vertex to skin
+     * @param count Number of vertices to skin
+     */
+    public static void skinDualQuaternion(float[] positions, float[] normals, int[] joints, float[] weights,
+            float[] palette, float[] outPositions, float[] outNormals, int start, int count) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        int end = start + count;
+        for (int vertex = start; vertex < end; vertex++) {
+            int influence = vertex * JOINTS_PER_VERTEX;
+            int first = joints[influence] * DualQuaternion.ELEMENTS;
+            float rx = 0, ry = 0, rz = 0, rw = 0;
+            float dx = 0, dy = 0, dz = 0, dw = 0;
+            for (int i = 0; i < JOINTS_PER_VERTEX; i++) {
+                float w = weights[influence + i];
+                if (w != 0) {
+                    int j = joints[influence + i] * DualQuaternion.ELEMENTS;
+                    // Shortest path - negate if opposite hemisphere of the first joint
+                    if (palette[first] * palette[j] + palette[first + 1] * palette[j + 1]
+                            + palette[first + 2] * palette[j + 2] + palette[first + 3] * palette[j + 3] < 0) {
+                        w = -w;
+                    }
+                    rx += palette[j] * w;
+                    ry += palette[j + 1] * w;
+                    rz += palette[j + 2] * w;
+                    rw += palette[j + 3] * w;
+                    dx += palette[j + 4] * w;
+                    dy += palette[j + 5] * w;
+                    dz += palette[j + 6] * w;
+                    dw += palette[j + 7] * w;
+                }
+            }
+            float len = (float) Math.sqrt(rx * rx + ry * ry + rz * rz + rw * rw);
+            if (len > 0) {
+                len = 1 / len;
+            }
+            rx *= len;
+            ry *= len;
+            rz *= len;
+            rw *= len;
+            dx *= len;
+            dy *= len;
+            dz *= len;
+            dw *= len;
+            // translation = 2 * dual * conjugate(real)
+            float tx = 2 * (-dw * rx + dx * rw - dy * rz + dz * ry);
+            float ty = 2 * (-dw * ry + dx * rz + dy * rw - dz * rx);
+            float tz = 2 * (-dw * rz - dx * ry + dy * rx + dz * rw);
+            int index = vertex * 3;
+            // v' = v + w * c + r x c, where c = 2 * (r x v)
+            float x = positions[index];
+            float y = positions[index + 1];
+            float z = positions[index + 2];
+            float cx = 2 * (ry * z - rz * y);
+            float cy = 2 * (rz * x - rx * z);
+            float cz = 2 * (rx * y - ry * x);
+            outPositions[index] = x + rw * cx + (ry * cz - rz * cy) + tx;
+            outPositions[index + 1] = y + rw * cy + (rz * cx - rx * cz) + ty;
+            outPositions[index + 2] = z + rw * cz + (rx * cy - ry * cx) + tz;
+            if (normals != null) {
+                x = normals[index];
+                y = normals[index + 1];
+                z = normals[index + 2];
+                cx = 2 * (ry * z - rz * y);
+                cy = 2 * (rz * x - rx * z);
+                cz = 2 * (rx * y - ry * x);
+                outNormals[index] = x + rw * cx + (ry * cz - rz * cy);
+                outNormals[index + 1] = y + rw * cy + (rz * cx - rx * cz);
+                outNormals[index + 2] = z + rw * cz + (rx * cy - ry * cx);
+            }
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.SKIN_DUAL_QUATERNION, count, startTime);
+        }
+    }
+
+    /**
+     * Parallel version of
+     * {@link #skinDualQuaternion(float[], float[], int[], float[], float[], float[], float[], int, int)}, the
+     * vertices are split into a number of ranges that are skinned in parallel using the common fork join pool.
+     *
+     * @param positions Bind pose positions, x, y and z per vertex
+     * @param normals Bind pose normals, x, y and z per vertex, or null
+     * @param joints Joint indices, 4 per vertex
+     * @param weights Joint weights, 4 per vertex
+     * @param palette Packed joint dual quaternions, 8 values per joint
+     * @param outPositions Destination for skinned positions, shall not be the same as positions
+     * @param outNormals Destination for skinned normals, or null
+     * @param start Index of the first vertex to skin
+     * @param count Number of vertices to skin
+     * @param ranges Number of vertex ranges to split into, normally number of available processors.
+     */
+    public static void skinDualQuaternion(float[] positions, float[] normals, int[] joints, float[] weights,
+            float[] palette, float[] outPositions, float[] outNormals, int start, int count, int ranges) {
+        if (ranges <= 1 || count < ranges) {
+            skinDualQuaternion(positions, normals, joints, weights, palette, outPositions, outNormals, start, count);
+            return;
+        }
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        final int rangeSize = (count + ranges - 1) / ranges;
+        IntStream.range(0, ranges).parallel().forEach(range -> {
+            int first = range * rangeSize;
+            int rangeCount = Math.min(rangeSize, count - first);
+            if (rangeCount > 0) {
+                skinDualQuaternion(positions, normals, joints, weights, palette, outPositions, outNormals,
+                        start + first, rangeCount);
+            }
+        });
+        if (Instrumentation.ENABLED) {
+            Instrumentation.event(Operation.SKIN_DUAL_QUATERNION, count, startTime);
+        }
+    }
+
+}
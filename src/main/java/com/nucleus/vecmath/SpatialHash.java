@@ -0,0 +1,306 @@
+package com.nucleus.vecmath;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import com.nucleus.vecmath.Instrumentation.Operation;
+
+/**
+ * Spatial hash grid over packed vec3 positions, for fixed radius neighbor queries.
+ * Positions are hashed to cubic cells and sorted by cell using a counting sort when {@link #build(float[], int, int)}
+ * is called, there are no per cell lists - the points of each hash bucket are stored after each other together
+ * with a copy of the position, so that queries read memory sequentially. Call build each step after positions
+ * have moved.
+ * Queries do not allocate and only read the grid, they may be called from several threads after build has
+ * returned. Build is NOT thread safe.
+ * A query that covers more cells than there are buckets scans all points once.
+ * Best performance is when the cell size is the same as the query radius.
+ *
+ * @author Richard Sahlin
+ *
+ */
+public class SpatialHash extends VecMath {
+
+    private final static int PRIME_X = 73856093;
+    private final static int PRIME_Y = 19349663;
+    private final static int PRIME_Z = 83492791;
+
+    private final float cellSize;
+    private final float invCellSize;
+    private final int mask;
+    /**
+     * Index of the first slot of each bucket, bucket n is in slots bucketStart[n] to bucketStart[n + 1] - 1
+     */
+    private final int[] bucketStart;
+    /**
+     * Point index for each slot
+     */
+    private final int[] slotPoint;
+    /**
+     * Cell x, y and z for each slot, used to skip points of other cells that hash to the same bucket
+     */
+    private final int[] slotCell;
+    /**
+     * Position x, y and z for each slot
+     */
+    private final float[] slotPosition;
+    /**
+     * Bucket for each point, used while building
+     */
+    private final int[] pointBucket;
+    private int count;
+
+    /**
+     * Creates a spatial hash
+     *
+     * @param cellSize Size of cells, normally the query radius
+     * @param buckets Number of hash buckets, rounded up to power of 2. Normally about the same as max points
+     * @param maxPoints Max number of points
+     * @throws IllegalArgumentException If cellSize, buckets or maxPoints is not larger than 0
+     */
+    public SpatialHash(float cellSize, int buckets, int maxPoints) {
+        if (cellSize <= 0 || buckets <= 0 || maxPoints <= 0) {
+            throw new IllegalArgumentException(
+                    "Invalid cellSize " + cellSize + ", buckets " + buckets + " or maxPoints " + maxPoints);
+        }
+        this.cellSize = cellSize;
+        invCellSize = 1 / cellSize;
+        int size = Integer.highestOneBit(buckets);
+        if (size < buckets) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        bucketStart = new int[size + 1];
+        slotPoint = new int[maxPoints];
+        slotCell = new int[maxPoints * 3];
+        slotPosition = new float[maxPoints * 3];
+        pointBucket = new int[maxPoints];
+    }
+
+    /**
+     * Returns the size of cells
+     *
+     * @return
+     */
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Returns the number of points in the grid, as set by the last call to {@link #build(float[], int, int)}
+     *
+     * @return
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Builds the grid from count packed x, y, z positions, point n is the position at index + n * 3 and is
+     * referenced as n by queries.
+     *
+     * @param positions Packed positions
+     * @param index Index into positions where the first position is read
+     * @param count Number of positions
+     * @throws IllegalArgumentException If count is larger than max points or a position is not finite
+     */
+    public void build(float[] positions, int index, int count) {
+        if (count > slotPoint.length) {
+            throw new IllegalArgumentException("Too many points " + count + ", max " + slotPoint.length);
+        }
+        // Check before the grid is changed so that a failed build leaves the previous grid
+        for (int i = index; i < index + count * 3; i++) {
+            if (!Float.isFinite(positions[i])) {
+                throw new IllegalArgumentException("Invalid position value " + positions[i] + " at " + i);
+            }
+        }
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        this.count = count;
+        Arrays.fill(bucketStart, 0);
+        int p = index;
+        for (int i = 0; i < count; i++) {
+            int bucket = hash(cell(positions[p]), cell(positions[p + 1]), cell(positions[p + 2]));
+            pointBucket[i] = bucket;
+            bucketStart[bucket]++;
+            p += 3;
+        }
+        for (int i = 1; i < bucketStart.length; i++) {
+            bucketStart[i] += bucketStart[i - 1];
+        }
+        // Bucket start now holds the end of each bucket, counting down while scattering keeps point order in buckets
+        // and leaves the start of each bucket
+        p = index + count * 3;
+        for (int i = count - 1; i >= 0; i--) {
+            p -= 3;
+            int slot = --bucketStart[pointBucket[i]];
+            int s = slot * 3;
+            slotPoint[slot] = i;
+            slotPosition[s] = positions[p];
+            slotPosition[s + 1] = positions[p + 1];
+            slotPosition[s + 2] = positions[p + 2];
+            slotCell[s] = cell(positions[p]);
+            slotCell[s + 1] = cell(positions[p + 1]);
+            slotCell[s + 2] = cell(positions[p + 2]);
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.SPATIAL_HASH, count, startTime);
+        }
+    }
+
+    /**
+     * Finds the points within radius of the position, the point indexes are stored in result.
+     * At most result.length - resultIndex points are written, the number of points found is returned - if this is
+     * larger than the space in result then not all points have been written.
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @param radius
+     * @param result Destination for point indexes, or null to only count
+     * @param resultIndex Index into result where the first point is written
+     * @return Number of points found within radius
+     * @throws IllegalArgumentException If position or radius is not finite or radius is negative
+     */
+    public int query(float x, float y, float z, float radius, int[] result, int resultIndex) {
+        if (!Float.isFinite(x) || !Float.isFinite(y) || !Float.isFinite(z)) {
+            throw new IllegalArgumentException("Invalid position " + x + ", " + y + ", " + z);
+        }
+        checkRadius(radius);
+        return query(x, y, z, radius, -1, -1, result, resultIndex);
+    }
+
+    /**
+     * Finds the neighbors within radius of each point, not including the point itself, and stores them as lists
+     * after each other - the neighbors of point n are in neighbors from neighborStart[n] to neighborStart[n + 1] - 1.
+     * Points are split into a number of ranges that are processed in parallel using the common fork join pool.
+     * Neighbors are first counted, if the total is larger than neighbors.length then only neighborStart is written
+     * and the total is returned, so that the caller can grow neighbors and call again.
+     *
+     * @param radius
+     * @param higherOnly True to only include neighbors with a higher index, each pair is then stored once
+     * @param neighborStart Destination for the start of each list, at least {@link #getCount()} + 1 values
+     * @param neighbors Destination for the neighbor lists
+     * @param ranges Number of ranges to split into, normally number of available processors.
+     * @return Total number of neighbors
+     * @throws IllegalArgumentException If radius is not finite or negative
+     */
+    public int findNeighbors(float radius, boolean higherOnly, int[] neighborStart, int[] neighbors, int ranges) {
+        checkRadius(radius);
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        final int total = count;
+        final int rangeSize = ranges <= 1 ? total : (total + ranges - 1) / ranges;
+        final int rangeCount = rangeSize == 0 ? 0 : (total + rangeSize - 1) / rangeSize;
+        // Count pass, iterate in slot order for locality
+        IntStream.range(0, rangeCount).parallel().forEach(range -> {
+            int end = Math.min(total, (range + 1) * rangeSize);
+            for (int slot = range * rangeSize; slot < end; slot++) {
+                neighborStart[slotPoint[slot] + 1] = querySlot(slot, radius, higherOnly, null, 0);
+            }
+        });
+        neighborStart[0] = 0;
+        for (int i = 1; i <= total; i++) {
+            neighborStart[i] += neighborStart[i - 1];
+        }
+        int found = neighborStart[total];
+        if (found <= neighbors.length) {
+            IntStream.range(0, rangeCount).parallel().forEach(range -> {
+                int end = Math.min(total, (range + 1) * rangeSize);
+                for (int slot = range * rangeSize; slot < end; slot++) {
+                    querySlot(slot, radius, higherOnly, neighbors, neighborStart[slotPoint[slot]]);
+                }
+            });
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.SPATIAL_HASH, total, startTime);
+        }
+        return found;
+    }
+
+    private int querySlot(int slot, float radius, boolean higherOnly, int[] result, int resultIndex) {
+        int s = slot * 3;
+        return query(slotPosition[s], slotPosition[s + 1], slotPosition[s + 2], radius, slotPoint[slot],
+                higherOnly ? slotPoint[slot] : -1, result, resultIndex);
+    }
+
+    /**
+     * Finds points within radius, excluding the point with index exclude and points with index not above minPoint.
+     */
+    private int query(float x, float y, float z, float radius, int exclude, int minPoint, int[] result,
+            int resultIndex) {
+        float radiusSquared = radius * radius;
+        int minX = cell(x - radius);
+        int minY = cell(y - radius);
+        int minZ = cell(z - radius);
+        long cellsX = (long) cell(x + radius) - minX + 1;
+        long cellsY = (long) cell(y + radius) - minY + 1;
+        long cellsZ = (long) cell(z + radius) - minZ + 1;
+        int max = result != null ? result.length : 0;
+        int found = 0;
+        // Cell count in double since the product of three axes of up to 2^32 cells overflows long
+        if ((double) cellsX * cellsY * cellsZ > mask + 1) {
+            // More cells than buckets, scan all points once
+            for (int slot = 0; slot < count; slot++) {
+                int s = slot * 3;
+                int point = slotPoint[slot];
+                if (point == exclude || point <= minPoint) {
+                    continue;
+                }
+                float dx = slotPosition[s] - x;
+                float dy = slotPosition[s + 1] - y;
+                float dz = slotPosition[s + 2] - z;
+                if (dx * dx + dy * dy + dz * dz <= radiusSquared) {
+                    if (resultIndex < max) {
+                        result[resultIndex++] = point;
+                    }
+                    found++;
+                }
+            }
+            return found;
+        }
+        // Loops are bounded by cell count, cell may be clamped to Integer.MAX_VALUE
+        int cz = minZ;
+        for (int k = 0; k < cellsZ; k++, cz++) {
+            int cy = minY;
+            for (int j = 0; j < cellsY; j++, cy++) {
+                int cx = minX;
+                for (int i = 0; i < cellsX; i++, cx++) {
+                    int bucket = hash(cx, cy, cz);
+                    int end = bucketStart[bucket + 1];
+                    for (int slot = bucketStart[bucket]; slot < end; slot++) {
+                        int s = slot * 3;
+                        int point = slotPoint[slot];
+                        if (slotCell[s] != cx || slotCell[s + 1] != cy || slotCell[s + 2] != cz || point == exclude
+                                || point <= minPoint) {
+                            continue;
+                        }
+                        float dx = slotPosition[s] - x;
+                        float dy = slotPosition[s + 1] - y;
+                        float dz = slotPosition[s + 2] - z;
+                        if (dx * dx + dy * dy + dz * dz <= radiusSquared) {
+                            if (resultIndex < max) {
+                                result[resultIndex++] = point;
+                            }
+                            found++;
+                        }
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    private static void checkRadius(float radius) {
+        if (!Float.isFinite(radius) || radius < 0) {
+            throw new IllegalArgumentException("Invalid radius " + radius);
+        }
+    }
+
+    private int cell(float value) {
+        return (int) Math.floor(value * invCellSize);
+    }
+
+    private int hash(int cx, int cy, int cz) {
+        return ((cx * PRIME_X) ^ (cy * PRIME_Y) ^ (cz * PRIME_Z)) & mask;
+    }
+
+}
@@ -0,0 +1,343 @@
+package com.nucleus.vecmath;
+
+import com.nucleus.vecmath.Instrumentation.Operation;
+
+/**
+ * Cubic spline over packed vec3 control points, the polynomial coefficients of each segment are calculated
+ * when the spline is created so that evaluation is one cubic per component.
+ * The spline parameter t goes from 0 at the start of the first segment to 1 at the end of the last segment, all
+ * segments have the same parameter range.
+ * For constant speed sampling create the arc length table, {@link #createArcLengthTable(int)}, and use
+ * {@link #evaluateArcLength(float, float[], int)}
+ * This class is NOT thread safe while creating the arc length table.
+ *
+ * @author Richard Sahlin
+ *
+ */
+public class Spline extends VecMath {
+
+    /**
+     * The spline types
+     */
+    public enum Type {
+        /**
+         * Uniform Catmull-Rom, passes through all points except the first and last that are only used for the
+         * tangents. Number of segments is number of points - 3
+         */
+        CATMULL_ROM,
+        /**
+         * Cubic Bezier, points are start, control, control, end, control, control, end... where the end point
+         * is the start of the next segment. Number of segments is (number of points - 1) / 3
+         */
+        BEZIER,
+        /**
+         * Cubic Hermite, points are position and tangent pairs. Number of segments is number of points / 2 - 1
+         */
+        HERMITE;
+    }
+
+    /**
+     * Number of values in each point
+     */
+    public final static int POINT_ELEMENTS = 3;
+    /**
+     * Number of coefficients per segment, a, b, c and d for x, y and z.
+     */
+    public final static int SEGMENT_ELEMENTS = 12;
+
+    private final Type type;
+    private final int segments;
+    /**
+     * a, b, c, d per component where p(t) = a * t^3 + b * t^2 + c * t + d, for x, y and z
+     */
+    private final float[] coefficients;
+    private float[] arcLength;
+    private float length;
+
+    /**
+     * Creates a spline from count packed vec3 points.
+     *
+     * @param type The spline type
+     * @param points Packed points, x, y and z
+     * @param offset Offset into points where the first point is read
+     * @param count Number of points
+     * @throws IllegalArgumentException If there are too few points for one segment, or if the number of points does
+     * not match the type.
+     */
+    public Spline(Type type, float[] points, int offset, int count) {
+        this.type = type;
+        switch (type) {
+            case CATMULL_ROM:
+                segments = count - 3;
+                break;
+            case BEZIER:
+                if ((count - 1) % 3 != 0) {
+                    throw new IllegalArgumentException("Invalid number of Bezier points " + count);
+                }
+                segments = (count - 1) / 3;
+                break;
+            case HERMITE:
+                if ((count & 1) != 0) {
+                    throw new IllegalArgumentException("Invalid number of Hermite points " + count);
+                }
+                segments = count / 2 - 1;
+                break;
+            default:
+                throw new IllegalArgumentException("Not implemented for " + type);
+        }
+        if (segments < 1) {
+            throw new IllegalArgumentException("Too few points for " + type + ": " + count);
+        }
+        coefficients = new float[segments * SEGMENT_ELEMENTS];
+        for (int segment = 0; segment < segments; segment++) {
+            for (int component = 0; component < POINT_ELEMENTS; component++) {
+                setCoefficients(points, offset + component, segment, segment * SEGMENT_ELEMENTS + component * 4);
+            }
+        }
+    }
+
+    private void setCoefficients(float[] points, int offset, int segment, int index) {
+        float a, b, c, d;
+        switch (type) {
+            case CATMULL_ROM:
+                int cr = offset + segment * POINT_ELEMENTS;
+                float p0 = points[cr];
+                float p1 = points[cr + POINT_ELEMENTS];
+                float p2 = points[cr + POINT_ELEMENTS * 2];
+                float p3 = points[cr + POINT_ELEMENTS * 3];
+                a = 0.5f * (-p0 + 3 * p1 - 3 * p2 + p3);
+                b = 0.5f * (2 * p0 - 5 * p1 + 4 * p2 - p3);
+                c = 0.5f * (p2 - p0);
+                d = p1;
+                break;
+            case BEZIER:
+                int bz = offset + segment * POINT_ELEMENTS * 3;
+                p0 = points[bz];
+                p1 = points[bz + POINT_ELEMENTS];
+                p2 = points[bz + POINT_ELEMENTS * 2];
+                p3 = points[bz + POINT_ELEMENTS * 3];
+                a = -p0 + 3 * p1 - 3 * p2 + p3;
+                b = 3 * (p0 - 2 * p1 + p2);
+                c = 3 * (p1 - p0);
+                d = p0;
+                break;
+            case HERMITE:
+                int h = offset + segment * POINT_ELEMENTS * 2;
+                p0 = points[h];
+                float m0 = points[h + POINT_ELEMENTS];
+                p1 = points[h + POINT_ELEMENTS * 2];
+                float m1 = points[h + POINT_ELEMENTS * 3];
+                a = 2 * p0 + m0 - 2 * p1 + m1;
+                b = -3 * p0 - 2 * m0 + 3 * p1 - m1;
+                c = m0;
+                d = p0;
+                break;
+            default:
+                throw new IllegalArgumentException("Not implemented for " + type);
+        }
+        coefficients[index++] = a;
+        coefficients[index++] = b;
+        coefficients[index++] = c;
+        coefficients[index] = d;
+    }
+
+    /**
+     * Returns the spline type
+     *
+     * @return
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the number of segments
+     *
+     * @return
+     */
+    public int getSegmentCount() {
+        return segments;
+    }
+
+    /**
+     * Returns the length of the spline, this is calculated by {@link #createArcLengthTable(int)}
+     *
+     * @return The length, or 0 if the arc length table has not been created.
+     */
+    public float getLength() {
+        return length;
+    }
+
+    /**
+     * Evaluates the position at t and stores in result
+     *
+     * @param t Spline parameter, 0 to 1, values outside are clamped
+     * @param result
+     * @param index Index into result where x, y and z is written
+     * @return The result
+     */
+    public float[] evaluate(float t, float[] result, int index) {
+        float s = t * segments;
+        int segment = (int) s;
+        if (segment >= segments) {
+            segment = segments - 1;
+        } else if (segment < 0) {
+            segment = 0;
+        }
+        s = Math.max(0, Math.min(1, s - segment));
+        int c = segment * SEGMENT_ELEMENTS;
+        result[index++] = ((coefficients[c] * s + coefficients[c + 1]) * s + coefficients[c + 2]) * s
+                + coefficients[c + 3];
+        result[index++] = ((coefficients[c + 4] * s + coefficients[c + 5]) * s + coefficients[c + 6]) * s
+                + coefficients[c + 7];
+        result[index] = ((coefficients[c + 8] * s + coefficients[c + 9]) * s + coefficients[c + 10]) * s
+                + coefficients[c + 11];
+        return result;
+    }
+
+    /**
+     * Evaluates the tangent, first derivative with respect to the segment parameter, at t and stores in result
+     *
+     * @param t Spline parameter, 0 to 1, values outside are clamped
+     * @param result
+     * @param index Index into result where x, y and z is written
+     * @return The result
+     */
+    public float[] tangent(float t, float[] result, int index) {
+        float s = t * segments;
+        int segment = (int) s;
+        if (segment >= segments) {
+            segment = segments - 1;
+        } else if (segment < 0) {
+            segment = 0;
+        }
+        s = Math.max(0, Math.min(1, s - segment));
+        int c = segment * SEGMENT_ELEMENTS;
+        result[index++] = (3 * coefficients[c] * s + 2 * coefficients[c + 1]) * s + coefficients[c + 2];
+        result[index++] = (3 * coefficients[c + 4] * s + 2 * coefficients[c + 5]) * s + coefficients[c + 6];
+        result[index] = (3 * coefficients[c + 8] * s + 2 * coefficients[c + 9]) * s + coefficients[c + 10];
+        return result;
+    }
+
+    /**
+     * Evaluates the positions at count spline parameters and stores in result
+     *
+     * @param params Spline parameters, 0 to 1
+     * @param paramIndex Index into params where the first parameter is read
+     * @param result Packed result positions, x, y and z
+     * @param resultIndex Index into result where the first position is written
+     * @param count Number of parameters to evaluate
+     */
+    public void evaluate(float[] params, int paramIndex, float[] result, int resultIndex, int count) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        for (int i = 0; i < count; i++) {
+            evaluate(params[paramIndex++], result, resultIndex);
+            resultIndex += POINT_ELEMENTS;
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.SPLINE, count, startTime);
+        }
+    }
+
+    /**
+     * Creates the table used for constant speed sampling, the spline is sampled at samples + 1 uniformly spaced
+     * parameters and the accumulated length is stored. This will also set the length of the spline.
+     * More samples gives more accurate speed.
+     *
+     * @param samples Number of samples in the table
+     */
+    public void createArcLengthTable(int samples) {
+        if (samples < 1) {
+            throw new IllegalArgumentException("Invalid number of samples " + samples);
+        }
+        if (arcLength == null || arcLength.length != samples + 1) {
+            arcLength = new float[samples + 1];
+        }
+        float[] previous = new float[POINT_ELEMENTS];
+        float[] current = new float[POINT_ELEMENTS];
+        evaluate(0, previous, 0);
+        float total = 0;
+        arcLength[0] = 0;
+        for (int i = 1; i <= samples; i++) {
+            evaluate((float) i / samples, current, 0);
+            total += Matrix.length(current[X] - previous[X], current[Y] - previous[Y], current[Z] - previous[Z]);
+            arcLength[i] = total;
+            float[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        length = total;
+    }
+
+    /**
+     * Returns the spline parameter at the normalized distance along the spline, the arc length table is searched
+     * and linearly interpolated.
+     *
+     * @param distance Normalized distance, 0 at the start and 1 at the end of the spline
+     * @return Spline parameter, 0 to 1
+     * @throws IllegalArgumentException If the arc length table has not been created
+     */
+    public float getParameter(float distance) {
+        if (arcLength == null) {
+            throw new IllegalArgumentException("Arc length table not created");
+        }
+        int samples = arcLength.length - 1;
+        float target = distance * length;
+        if (target <= 0) {
+            return 0;
+        }
+        if (target >= length) {
+            return 1;
+        }
+        // Find last entry that is <= target
+        int low = 0;
+        int high = samples;
+        while (high - low > 1) {
+            int mid = (low + high) >>> 1;
+            if (arcLength[mid] <= target) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        float segmentLength = arcLength[high] - arcLength[low];
+        float fraction = segmentLength > 0 ? (target - arcLength[low]) / segmentLength : 0;
+        return (low + fraction) / samples;
+    }
+
+    /**
+     * Evaluates the position at the normalized distance along the spline, use this for constant speed sampling.
+     *
+     * @param distance Normalized distance, 0 at the start and 1 at the end of the spline
+     * @param result
+     * @param index Index into result where x, y and z is written
+     * @return The result
+     * @throws IllegalArgumentException If the arc length table has not been created
+     */
+    public float[] evaluateArcLength(float distance, float[] result, int index) {
+        return evaluate(getParameter(distance), result, index);
+    }
+
+    /**
+     * Evaluates the positions at count normalized distances along the spline and stores in result.
+     *
+     * @param distances Normalized distances, 0 to 1
+     * @param distanceIndex Index into distances where the first distance is read
+     * @param result Packed result positions, x, y and z
+     * @param resultIndex Index into result where the first position is written
+     * @param count Number of distances to evaluate
+     * @throws IllegalArgumentException If the arc length table has not been created
+     */
+    public void evaluateArcLength(float[] distances, int distanceIndex, float[] result, int resultIndex,
+            int count) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        for (int i = 0; i < count; i++) {
+            evaluate(getParameter(distances[distanceIndex++]), result, resultIndex);
+            resultIndex += POINT_ELEMENTS;
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.SPLINE, count, startTime);
+        }
+    }
+
+}
@@ -0,0 +1,229 @@
+package com.nucleus.vecmath;
+
+import java.nio.FloatBuffer;
+import java.util.stream.IntStream;
+
+import com.nucleus.vecmath.Instrumentation.Operation;
+
+/**
+ * Static utilities to build quad vertices for a batch of sprites in one pass.
+ * Each sprite has a rectangle, packed as {@link Rectangle} values x, y, width and height, and a transform packed
+ * as {@link Matrix2D} values, 6 per sprite - use {@link Matrix2D#set(float[], int, float, float, float, float, float)}
+ * to set the transform from position, rotation and scale.
+ * Optional texture coordinates are packed as u0, v0, u1, v1 per sprite.
+ * Each sprite is written as 4 vertices with x, y, u, v in the order (x, y), (x + width, y), (x + width, y + height),
+ * (x, y + height), vertices may be interleaved with other values in the destination by using a stride.
+ *
+ * @author Richard Sahlin
+ *
+ */
+public class SpriteBatch {
+
+    /**
+     * Number of vertices per sprite
+     */
+    public final static int VERTICES_PER_SPRITE = 4;
+    /**
+     * Number of values written per vertex, x, y, u, v
+     */
+    public final static int VERTEX_ELEMENTS = 4;
+    /**
+     * Number of values for texture coordinates per sprite, u0, v0, u1, v1
+     */
+    public final static int UV_ELEMENTS = 4;
+
+    private final static int RECTANGLE_ELEMENTS = 4;
+
+    /**
+     * Writes the transformed quad vertices of count sprites from start.
+     * Sprite n is read from rectangles at n * 4, from transforms at n * 6 and from uvs at n * 4, and written to
+     * dest at destIndex + n * 4 * destStride.
+     *
+     * @param rectangles Packed rectangles, x, y, width, height per sprite
+     * @param transforms Packed {@link Matrix2D} transforms, 6 values per sprite
+     * @param uvs Packed texture coordinates, u0, v0, u1, v1 per sprite, or null to use 0 to 1
+     * @param dest Destination vertex stream
+     * @param destIndex Index into dest where the vertices of sprite 0 are written
+     * @param destStride Number of values between vertices in dest, at least {@link #VERTEX_ELEMENTS}
+     * @param start Index of the first sprite
+     * @param count Number of sprites
+     */
+    public static void build(float[] rectangles, float[] transforms, float[] uvs, float[] dest, int destIndex,
+            int destStride, int start, int count) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        float[] vertices = new float[VERTICES_PER_SPRITE * VERTEX_ELEMENTS];
+        int end = start + count;
+        for (int sprite = start; sprite < end; sprite++) {
+            setVertices(rectangles, transforms, uvs, sprite, vertices);
+            int index = destIndex + sprite * VERTICES_PER_SPRITE * destStride;
+            for (int v = 0; v < vertices.length; v += VERTEX_ELEMENTS) {
+                dest[index] = vertices[v];
+                dest[index + 1] = vertices[v + 1];
+                dest[index + 2] = vertices[v + 2];
+                dest[index + 3] = vertices[v + 3];
+                index += destStride;
+            }
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.SPRITE_QUADS, count, startTime);
+        }
+    }
+
+    /**
+     * Writes the transformed quad vertices of count sprites from start into a FloatBuffer, using absolute put so
+     * that the buffer position is not changed.
+     * Sprite n is read from rectangles at n * 4, from transforms at n * 6 and from uvs at n * 4, and written to
+     * dest at destIndex + n * 4 * destStride.
+     *
+     * @param rectangles Packed rectangles, x, y, width, height per sprite
+     * @param transforms Packed {@link Matrix2D} transforms, 6 values per sprite
+     * @param uvs Packed texture coordinates, u0, v0, u1, v1 per sprite, or null to use 0 to 1
+     * @param dest Destination vertex buffer
+     * @param destIndex Index into dest where the vertices of sprite 0 are written
+     * @param destStride Number of values between vertices in dest, at least {@link #VERTEX_ELEMENTS}
+     * @param start Index of the first sprite
+     * @param count Number of sprites
+     */
+    public static void build(float[] rectangles, float[] transforms, float[] uvs, FloatBuffer dest, int destIndex,
+            int destStride, int start, int count) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        float[] vertices = new float[VERTICES_PER_SPRITE * VERTEX_ELEMENTS];
+        int end = start + count;
+        for (int sprite = start; sprite < end; sprite++) {
+            setVertices(rectangles, transforms, uvs, sprite, vertices);
+            int index = destIndex + sprite * VERTICES_PER_SPRITE * destStride;
+            for (int v = 0; v < vertices.length; v += VERTEX_ELEMENTS) {
+                dest.put(index, vertices[v]).put(index + 1, vertices[v + 1]).put(index + 2, vertices[v + 2])
+                        .put(index + 3, vertices[v + 3]);
+                index += destStride;
+            }
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.SPRITE_QUADS, count, startTime);
+        }
+    }
+
+    /**
+     * Parallel version of {@link #build(float[], float[], float[], float[], int, int, int, int)}, the sprites are
+     * split into a number of ranges that are built in parallel using the common fork join pool.
+     * Use this for very large batches.
+     *
+     * @param rectangles Packed rectangles, x, y, width, height per sprite
+     * @param transforms Packed {@link Matrix2D} transforms, 6 values per sprite
+     * @param uvs Packed texture coordinates, u0, v0, u1, v1 per sprite, or null to use 0 to 1
+     * @param dest Destination vertex stream
+     * @param destIndex Index into dest where the vertices of sprite 0 are written
+     * @param destStride Number of values between vertices in dest, at least {@link #VERTEX_ELEMENTS}
+     * @param start Index of the first sprite
+     * @param count Number of sprites
+     * @param ranges Number of sprite ranges to split into, normally number of available processors.
+     */
+    public static void build(float[] rectangles, float[] transforms, float[] uvs, float[] dest, int destIndex,
+            int destStride, int start, int count, int ranges) {
+        if (ranges <= 1 || count < ranges) {
+            build(rectangles, transforms, uvs, dest, destIndex, destStride, start, count);
+            return;
+        }
+        buildRanges(start, count, ranges, (rangeStart, rangeCount) -> build(rectangles, transforms, uvs, dest,
+                destIndex, destStride, rangeStart, rangeCount));
+    }
+
+    /**
+     * Parallel version of {@link #build(float[], float[], float[], FloatBuffer, int, int, int, int)}, the sprites
+     * are split into a number of ranges that are built in parallel using the common fork join pool.
+     * Ranges write to separate parts of the buffer using absolute put.
+     *
+     * @param rectangles Packed rectangles, x, y, width, height per sprite
+     * @param transforms Packed {@link Matrix2D} transforms, 6 values per sprite
+     * @param uvs Packed texture coordinates, u0, v0, u1, v1 per sprite, or null to use 0 to 1
+     * @param dest Destination vertex buffer
+     * @param destIndex Index into dest where the vertices of sprite 0 are written
+     * @param destStride Number of values between vertices in dest, at least {@link #VERTEX_ELEMENTS}
+     * @param start Index of the first sprite
+     * @param count Number of sprites
+     * @param ranges Number of sprite ranges to split into, normally number of available processors.
+     */
+    public static void build(float[] rectangles, float[] transforms, float[] uvs, FloatBuffer dest, int destIndex,
+            int destStride, int start, int count, int ranges) {
+        if (ranges <= 1 || count < ranges) {
+            build(rectangles, transforms, uvs, dest, destIndex, destStride, start, count);
+            return;
+        }
+        buildRanges(start, count, ranges, (rangeStart, rangeCount) -> build(rectangles, transforms, uvs, dest,
+                destIndex, destStride, rangeStart, rangeCount));
+    }
+
+    /**
+     * Builds sprites start to start + count - 1, called for each range by the parallel build
+     */
+    private interface RangeBuilder {
+        void build(int start, int count);
+    }
+
+    private static void buildRanges(int start, int count, int ranges, RangeBuilder builder) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        final int rangeSize = (count + ranges - 1) / ranges;
+        IntStream.range(0, ranges).parallel().forEach(range -> {
+            int first = range * rangeSize;
+            int rangeCount = Math.min(rangeSize, count - first);
+            if (rangeCount > 0) {
+                builder.build(start + first, rangeCount);
+            }
+        });
+        if (Instrumentation.ENABLED) {
+            Instrumentation.event(Operation.SPRITE_QUADS, count, startTime);
+        }
+    }
+
+    /**
+     * Calculates the 4 transformed vertices of the sprite, x, y, u, v each, and stores in vertices.
+     * This is the only place where the corners are calculated, used by all build methods.
+     */
+    private static void setVertices(float[] rectangles, float[] transforms, float[] uvs, int sprite,
+            float[] vertices) {
+        int r = sprite * RECTANGLE_ELEMENTS;
+        int m = sprite * Matrix2D.MATRIX_ELEMENTS;
+        float x0 = rectangles[r];
+        float y0 = rectangles[r + 1];
+        float x1 = x0 + rectangles[r + 2];
+        float y1 = y0 + rectangles[r + 3];
+        float a = transforms[m];
+        float b = transforms[m + 1];
+        float c = transforms[m + 3];
+        float d = transforms[m + 4];
+        // Shared terms of the 4 corners
+        float ax0 = a * x0 + transforms[m + 2];
+        float ax1 = a * x1 + transforms[m + 2];
+        float cx0 = c * x0 + transforms[m + 5];
+        float cx1 = c * x1 + transforms[m + 5];
+        float by0 = b * y0;
+        float by1 = b * y1;
+        float dy0 = d * y0;
+        float dy1 = d * y1;
+        float u0 = 0, v0 = 0, u1 = 1, v1 = 1;
+        if (uvs != null) {
+            int uv = sprite * UV_ELEMENTS;
+            u0 = uvs[uv];
+            v0 = uvs[uv + 1];
+            u1 = uvs[uv + 2];
+            v1 = uvs[uv + 3];
+        }
+        vertices[0] = ax0 + by0;
+        vertices[1] = cx0 + dy0;
+        vertices[2] = u0;
+        vertices[3] = v0;
+        vertices[4] = ax1 + by0;
+        vertices[5] = cx1 + dy0;
+        vertices[6] = u1;
+        vertices[7] = v0;
+        vertices[8] = ax1 + by1;
+        vertices[9] = cx1 + dy1;
+        vertices[10] = u1;
+        vertices[11] = v1;
+        vertices[12] = ax0 + by1;
+        vertices[13] = cx0 + dy1;
+        vertices[14] = u0;
+        vertices[15] = v1;
+    }
+
+}
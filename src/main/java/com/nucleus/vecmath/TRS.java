@@ -0,0 +1,281 @@
+package com.nucleus.vecmath;
+
+import com.nucleus.vecmath.Instrumentation.Operation;
+
+/**
+ * Static utilities for compact packed transforms, 10 values per transform - translate x, y, z, rotation quaternion
+ * x, y, z, w and scale x, y, z. This is 40 bytes instead of the 64 bytes used by a {@link Matrix}
+ * The transform is the same as {@link Transform#updateMatrix()}, matrix = translate * scale * rotate, and the
+ * rotation uses the same quaternion convention as {@link Matrix#setQuaternionRotation(float[], float[])}
+ *
+ * @author Richard Sahlin
+ *
+ */
+public final class TRS extends VecMath {
+
+    /**
+     * Number of values in a packed transform
+     */
+    public final static int ELEMENTS = 10;
+    /**
+     * Index to translate x, y, z
+     */
+    public final static int TRANSLATE = 0;
+    /**
+     * Index to rotation quaternion x, y, z, w
+     */
+    public final static int ROTATION = 3;
+    /**
+     * Index to scale x, y, z
+     */
+    public final static int SCALE = 7;
+
+    private TRS() {
+    }
+
+    /**
+     * Sets the packed transform to identity, no translation or rotation and scale 1
+     *
+     * @param trs
+     * @param index Index into trs where values are written
+     * @return The trs array
+     */
+    public static float[] setIdentity(float[] trs, int index) {
+        trs[index++] = 0;
+        trs[index++] = 0;
+        trs[index++] = 0;
+        trs[index++] = 0;
+        trs[index++] = 0;
+        trs[index++] = 0;
+        trs[index++] = 1;
+        trs[index++] = 1;
+        trs[index++] = 1;
+        trs[index] = 1;
+        return trs;
+    }
+
+    /**
+     * Stores the translate, rotation and scale of the transform as a packed transform.
+     * Transforms that do not have translate, scale or rotation use 0, 1 and no rotation.
+     *
+     * @param transform
+     * @param trs Destination
+     * @param index Index into trs where values are written
+     * @return The trs array
+     */
+    public static float[] set(Transform transform, float[] trs, int index) {
+        float[] t = transform.getTranslate();
+        float[] s = transform.getScale();
+        transform.getQuaternion(trs, index + ROTATION);
+        if (t != null) {
+            trs[index + TRANSLATE] = t[X];
+            trs[index + TRANSLATE + 1] = t[Y];
+            trs[index + TRANSLATE + 2] = t[Z];
+        } else {
+            trs[index + TRANSLATE] = 0;
+            trs[index + TRANSLATE + 1] = 0;
+            trs[index + TRANSLATE + 2] = 0;
+        }
+        if (s != null) {
+            trs[index + SCALE] = s[X];
+            trs[index + SCALE + 1] = s[Y];
+            trs[index + SCALE + 2] = s[Z];
+        } else {
+            trs[index + SCALE] = 1;
+            trs[index + SCALE + 1] = 1;
+            trs[index + SCALE + 2] = 1;
+        }
+        return trs;
+    }
+
+    /**
+     * Sets the translate, axis angle and scale of the transform from the packed transform, so that
+     * {@link Transform#updateMatrix()} gives the same matrix as {@link #toMatrix(float[], int, float[], int)}
+     * Arrays in the transform are only created if null.
+     *
+     * @param trs
+     * @param index Index into trs where values are read
+     * @param transform Destination
+     * @return The transform
+     */
+    public static Transform toTransform(float[] trs, int index, Transform transform) {
+        if (transform.translate == null) {
+            transform.translate = new float[3];
+        }
+        if (transform.scale == null) {
+            transform.scale = new float[3];
+        }
+        if (transform.axisAngle == null) {
+            transform.axisAngle = new AxisAngle();
+        }
+        transform.translate[X] = trs[index + TRANSLATE];
+        transform.translate[Y] = trs[index + TRANSLATE + 1];
+        transform.translate[Z] = trs[index + TRANSLATE + 2];
+        transform.scale[X] = trs[index + SCALE];
+        transform.scale[Y] = trs[index + SCALE + 1];
+        transform.scale[Z] = trs[index + SCALE + 2];
+        float w = Math.min(1f, Math.max(-1f, trs[index + ROTATION + 3]));
+        float sinHalf = (float) Math.sqrt(1 - w * w);
+        float[] values = transform.axisAngle.axisAngle;
+        if (sinHalf < 0.000001f) {
+            values[X] = 0;
+            values[Y] = 0;
+            values[Z] = 1;
+            values[AxisAngle.ANGLE] = 0;
+        } else {
+            // Rotation in updateMatrix() is the transpose of the quaternion rotation - negate angle
+            values[X] = trs[index + ROTATION] / sinHalf;
+            values[Y] = trs[index + ROTATION + 1] / sinHalf;
+            values[Z] = trs[index + ROTATION + 2] / sinHalf;
+            values[AxisAngle.ANGLE] = (float) (-2 * Math.acos(w));
+        }
+        return transform;
+    }
+
+    /**
+     * Expands the packed transform to a matrix, all 16 values are written.
+     *
+     * @param trs
+     * @param index Index into trs where values are read
+     * @param matrix Destination matrix
+     * @param offset Offset into matrix where values are written
+     * @return The matrix
+     */
+    public static float[] toMatrix(float[] trs, int index, float[] matrix, int offset) {
+        toMatrix(trs[index], trs[index + 1], trs[index + 2], trs[index + 3], trs[index + 4], trs[index + 5],
+                trs[index + 6], trs[index + 7], trs[index + 8], trs[index + 9], matrix, offset);
+        return matrix;
+    }
+
+    /**
+     * Expands count packed transforms to matrices, stored packed 16 values each.
+     *
+     * @param trs Packed transforms
+     * @param index Index into trs where the first transform is read
+     * @param matrices Destination matrices
+     * @param offset Offset into matrices where the first matrix is written
+     * @param count Number of transforms
+     */
+    public static void toMatrix(float[] trs, int index, float[] matrices, int offset, int count) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        for (int i = 0; i < count; i++) {
+            toMatrix(trs[index], trs[index + 1], trs[index + 2], trs[index + 3], trs[index + 4], trs[index + 5],
+                    trs[index + 6], trs[index + 7], trs[index + 8], trs[index + 9], matrices, offset);
+            index += ELEMENTS;
+            offset += Matrix.MATRIX_ELEMENTS;
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.TRS, count, startTime);
+        }
+    }
+
+    /**
+     * Composes two packed transforms, parent * child, without going through matrices. The result is the transform
+     * of the child in the space of the parent.
+     * Rotation and scale are combined separately, the result is exact when the child scale is uniform - for
+     * non uniform child scale under a rotated parent the matrix product has shear that can not be stored as a
+     * packed transform. Result may be the same as parent or child.
+     *
+     * @param parent
+     * @param pIndex Index into parent
+     * @param child
+     * @param cIndex Index into child
+     * @param result
+     * @param rIndex Index into result where the composed transform is written
+     * @return The result
+     */
+    public static float[] mul(float[] parent, int pIndex, float[] child, int cIndex, float[] result, int rIndex) {
+        float ax = parent[pIndex + ROTATION];
+        float ay = parent[pIndex + ROTATION + 1];
+        float az = parent[pIndex + ROTATION + 2];
+        float aw = parent[pIndex + ROTATION + 3];
+        float bx = child[cIndex + ROTATION];
+        float by = child[cIndex + ROTATION + 1];
+        float bz = child[cIndex + ROTATION + 2];
+        float bw = child[cIndex + ROTATION + 3];
+        float tx = child[cIndex + TRANSLATE];
+        float ty = child[cIndex + TRANSLATE + 1];
+        float tz = child[cIndex + TRANSLATE + 2];
+        float psx = parent[pIndex + SCALE];
+        float psy = parent[pIndex + SCALE + 1];
+        float psz = parent[pIndex + SCALE + 2];
+        // Rotate child translation by parent rotation, t' = t + w * c + q x c where c = 2 * (q x t)
+        float cx = 2 * (ay * tz - az * ty);
+        float cy = 2 * (az * tx - ax * tz);
+        float cz = 2 * (ax * ty - ay * tx);
+        float rx = tx + aw * cx + (ay * cz - az * cy);
+        float ry = ty + aw * cy + (az * cx - ax * cz);
+        float rz = tz + aw * cz + (ax * cy - ay * cx);
+        result[rIndex + TRANSLATE] = parent[pIndex + TRANSLATE] + rx * psx;
+        result[rIndex + TRANSLATE + 1] = parent[pIndex + TRANSLATE + 1] + ry * psy;
+        result[rIndex + TRANSLATE + 2] = parent[pIndex + TRANSLATE + 2] + rz * psz;
+        result[rIndex + ROTATION] = aw * bx + ax * bw + ay * bz - az * by;
+        result[rIndex + ROTATION + 1] = aw * by - ax * bz + ay * bw + az * bx;
+        result[rIndex + ROTATION + 2] = aw * bz + ax * by - ay * bx + az * bw;
+        result[rIndex + ROTATION + 3] = aw * bw - ax * bx - ay * by - az * bz;
+        result[rIndex + SCALE] = psx * child[cIndex + SCALE];
+        result[rIndex + SCALE + 1] = psy * child[cIndex + SCALE + 1];
+        result[rIndex + SCALE + 2] = psz * child[cIndex + SCALE + 2];
+        return result;
+    }
+
+    /**
+     * Composes count packed parent and child transforms, result[n] = parent[n] * child[n], see
+     * {@link #mul(float[], int, float[], int, float[], int)}
+     *
+     * @param parents Packed parent transforms
+     * @param pIndex Index into parents where the first transform is read
+     * @param children Packed child transforms
+     * @param cIndex Index into children where the first transform is read
+     * @param result Packed result transforms, may be the same as parents or children
+     * @param rIndex Index into result where the first transform is written
+     * @param count Number of transforms
+     */
+    public static void mul(float[] parents, int pIndex, float[] children, int cIndex, float[] result, int rIndex,
+            int count) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        for (int i = 0; i < count; i++) {
+            mul(parents, pIndex, children, cIndex, result, rIndex);
+            pIndex += ELEMENTS;
+            cIndex += ELEMENTS;
+            rIndex += ELEMENTS;
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.TRS, count, startTime);
+        }
+    }
+
+    /**
+     * Sets the matrix to translate * scale * rotate, scale multiplies the rows of the rotation - same as
+     * {@link Transform#updateMatrix()}. All 16 values are written.
+     */
+    static void toMatrix(float tx, float ty, float tz, float x, float y, float z, float w, float sx, float sy,
+            float sz, float[] matrix, int offset) {
+        float xx = 2 * x * x;
+        float xy = 2 * x * y;
+        float xz = 2 * x * z;
+        float xw = 2 * x * w;
+        float yy = 2 * y * y;
+        float yz = 2 * y * z;
+        float yw = 2 * y * w;
+        float zz = 2 * z * z;
+        float zw = 2 * z * w;
+        matrix[offset] = (1 - (yy + zz)) * sx;
+        matrix[offset + 1] = (xy - zw) * sx;
+        matrix[offset + 2] = (xz + yw) * sx;
+        matrix[offset + 3] = tx;
+        matrix[offset + 4] = (xy + zw) * sy;
+        matrix[offset + 5] = (1 - (xx + zz)) * sy;
+        matrix[offset + 6] = (yz - xw) * sy;
+        matrix[offset + 7] = ty;
+        matrix[offset + 8] = (xz - yw) * sz;
+        matrix[offset + 9] = (yz + xw) * sz;
+        matrix[offset + 10] = (1 - (xx + yy)) * sz;
+        matrix[offset + 11] = tz;
+        matrix[offset + 12] = 0;
+        matrix[offset + 13] = 0;
+        matrix[offset + 14] = 0;
+        matrix[offset + 15] = 1;
+    }
+
+}
@@ -1,6 +1,7 @@
 package com.nucleus.vecmath;
 
 import com.google.gson.annotations.SerializedName;
+import com.nucleus.vecmath.Instrumentation.Operation;
 
 /**
  * Holds 3D transform information, data is for x,y and z axis.
@@ -201,6 +202,35 @@ public final class Transform extends Matrix {
         return axisAngle;
     }
 
+    /**
+     * Stores the rotation of this transform as a quaternion, x, y, z and w. The rotation is the same as used by
+     * {@link #updateMatrix()} and uses the same convention as {@link Matrix#setQuaternionRotation(float[], float[])}
+     * If there is no axis angle the identity quaternion is stored.
+     * 
+     * @param quaternion Destination
+     * @param index Index into quaternion where values are written
+     * @return The quaternion
+     */
+    public float[] getQuaternion(float[] quaternion, int index) {
+        if (axisAngle == null) {
+            quaternion[index++] = 0;
+            quaternion[index++] = 0;
+            quaternion[index++] = 0;
+            quaternion[index] = 1;
+            return quaternion;
+        }
+        float[] aa = axisAngle.axisAngle;
+        float len = Matrix.length(aa[X], aa[Y], aa[Z]);
+        // Matrix.setRotateM() rotation is the transpose of the quaternion rotation - negate angle
+        float half = -0.5f * aa[AxisAngle.ANGLE];
+        float s = (float) Math.sin(half) / len;
+        quaternion[index++] = aa[X] * s;
+        quaternion[index++] = aa[Y] * s;
+        quaternion[index++] = aa[Z] * s;
+        quaternion[index] = (float) Math.cos(half);
+        return quaternion;
+    }
+
     /**
      * Sets the transform to the matrix, values are copied to the matrix in this class.
      * 
@@ -210,6 +240,49 @@ public final class Transform extends Matrix {
         System.arraycopy(matrix, 0, this.matrix, 0, Matrix.MATRIX_ELEMENTS);
     }
 
+    /**
+     * Sets the translate, scale and axis angle of this transform from the matrix, the matrix is copied to this class.
+     * The matrix is treated as created by {@link #updateMatrix()}, ie scale is the length of the x, y and z rows of the
+     * upper 3 x 3, so that calling {@link #updateMatrix()} afterwards will give the same matrix.
+     * Values are written into the existing arrays, these are only created if null.
+     * If the matrix is mirrored (negative determinant) the x axis scale is negative.
+     * See {@link Matrix#decompose(float[], int, float[], int, float[], int, float[], int)}
+     * 
+     * @param matrix Source matrix, must not contain shear or projection.
+     */
+    public void setFromMatrix(float[] matrix) {
+        if (translate == null) {
+            translate = new float[3];
+        }
+        if (scale == null) {
+            scale = new float[3];
+        }
+        if (axisAngle == null) {
+            axisAngle = new AxisAngle();
+        }
+        System.arraycopy(matrix, 0, this.matrix, 0, Matrix.MATRIX_ELEMENTS);
+        float[] values = axisAngle.axisAngle;
+        // Quaternion is written to the 4 axis angle values, then converted in place
+        Matrix.decompose(matrix, 0, translate, 0, values, 0, scale, 0);
+        float qx = values[X];
+        float qy = values[Y];
+        float qz = values[Z];
+        float w = Math.min(1f, Math.max(-1f, values[AxisAngle.ANGLE]));
+        float sinHalf = (float) Math.sqrt(1 - w * w);
+        if (sinHalf < 0.000001f) {
+            values[X] = 0;
+            values[Y] = 0;
+            values[Z] = 1;
+            values[AxisAngle.ANGLE] = 0;
+        } else {
+            // Rotation in updateMatrix() is the transpose of the quaternion rotation - negate angle
+            values[X] = qx / sinHalf;
+            values[Y] = qy / sinHalf;
+            values[Z] = qz / sinHalf;
+            values[AxisAngle.ANGLE] = (float) (-2 * Math.acos(w));
+        }
+    }
+
     /**
      * Enables or disables matrix mode, if matrixMode is enabled then the {@link #updateMatrix()} method will return the
      * existing matrix.
@@ -236,6 +309,9 @@ public final class Transform extends Matrix {
      * returned.
      */
     public float[] updateMatrix() {
+        if (Instrumentation.ENABLED) {
+            Instrumentation.count(Operation.UPDATE_MATRIX);
+        }
         if (!matrixMode && (axisAngle != null || scale != null || translate != null)) {
             Matrix.setIdentity(matrix, 0);
             Matrix.rotateM(matrix, axisAngle);
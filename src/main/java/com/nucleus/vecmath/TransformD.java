@@ -0,0 +1,241 @@
+package com.nucleus.vecmath;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Double precision version of {@link Transform}, holds 3D transform information for x,y and z axis.
+ * Use this for objects placed far from world origin, the matrix can be sent to float consumers relative to the
+ * camera using {@link #getRelativeMatrix(double[], int, float[], int)}
+ * This class may be serialized using GSON
+ *
+ * @author Richard Sahlin
+ *
+ */
+public final class TransformD extends MatrixD {
+
+    @SerializedName(Transform.AXIS_ANGLE)
+    AxisAngle axisAngle;
+
+    @SerializedName(Transform.SCALE)
+    double[] scale;
+
+    @SerializedName(Transform.TRANSLATE)
+    double[] translate;
+
+    transient protected boolean matrixMode = false;
+
+    /**
+     * Default constructor
+     */
+    public TransformD() {
+        super();
+        MatrixD.setIdentity(matrix, 0);
+    }
+
+    /**
+     * Creates a new instance from the specified transform.
+     * All values in the source transform will be copied into this class
+     *
+     * @param source
+     */
+    public TransformD(TransformD source) {
+        MatrixD.setIdentity(matrix, 0);
+        set(source);
+    }
+
+    /**
+     * Creates a new double precision instance from the float transform.
+     *
+     * @param source
+     */
+    public TransformD(Transform source) {
+        MatrixD.setIdentity(matrix, 0);
+        set(source);
+    }
+
+    /**
+     * Copies all transform values from the source into this class.
+     *
+     * @param source
+     */
+    public void set(TransformD source) {
+        if (source.scale != null) {
+            scale = new double[3];
+            setScale(source.scale);
+        }
+        if (source.translate != null) {
+            translate = new double[3];
+            setTranslate(source.translate);
+        }
+        if (source.axisAngle != null) {
+            axisAngle = new AxisAngle(source.axisAngle);
+        }
+    }
+
+    /**
+     * Copies all transform values from the float source into this class.
+     *
+     * @param source
+     */
+    public void set(Transform source) {
+        if (source.scale != null) {
+            scale = new double[3];
+            setScale(source.scale[X], source.scale[Y], source.scale[Z]);
+        }
+        if (source.translate != null) {
+            translate = new double[3];
+            translate[X] = source.translate[X];
+            translate[Y] = source.translate[Y];
+            translate[Z] = source.translate[Z];
+        }
+        if (source.axisAngle != null) {
+            axisAngle = new AxisAngle(source.axisAngle);
+        }
+    }
+
+    /**
+     * Returns the translation for this transform.
+     * The returned array will be a reference to the translate in this class.
+     *
+     * @return Array with x,y and z axis translation
+     */
+    public double[] getTranslate() {
+        return translate;
+    }
+
+    /**
+     * Copies the translate values into this transform
+     *
+     * @param translate Array with at least 3 values
+     */
+    public void setTranslate(double[] translate) {
+        this.translate[X] = translate[X];
+        this.translate[Y] = translate[Y];
+        this.translate[Z] = translate[Z];
+    }
+
+    /**
+     * Adds the specified translation in x, y and z
+     *
+     * @param x
+     * @param y
+     * @param z
+     */
+    public void translate(double x, double y, double z) {
+        translate[X] += x;
+        translate[Y] += y;
+        translate[Z] += z;
+    }
+
+    /**
+     * Returns the z,y, z axis scale
+     * The returned array will be a reference to the scale in this class.
+     *
+     * @return Array with x,y and z axis scale.
+     */
+    public double[] getScale() {
+        return scale;
+    }
+
+    /**
+     * Sets the x,y and z axis scale
+     *
+     * @param x
+     * @param y
+     * @param z
+     */
+    public void setScale(double x, double y, double z) {
+        scale[X] = x;
+        scale[Y] = y;
+        scale[Z] = z;
+    }
+
+    /**
+     * Sets the scale values in this transform from the specified array.
+     *
+     * @param scale Array with at least 3 values
+     */
+    public void setScale(double[] scale) {
+        this.scale[X] = scale[X];
+        this.scale[Y] = scale[Y];
+        this.scale[Z] = scale[Z];
+    }
+
+    /**
+     * Returns the axis angle.
+     * The returned object will be a reference to the axisangle in this class
+     *
+     * @return The axis angle for this transform.
+     */
+    public AxisAngle getAxisAngle() {
+        return axisAngle;
+    }
+
+    /**
+     * Sets the transform to the matrix, values are copied to the matrix in this class.
+     *
+     * @param matrix Matrix to set to this class
+     */
+    public void setMatrix(double[] matrix) {
+        System.arraycopy(matrix, 0, this.matrix, 0, Matrix.MATRIX_ELEMENTS);
+    }
+
+    /**
+     * Enables or disables matrix mode, if matrixMode is enabled then the {@link #updateMatrix()} method will return the
+     * existing matrix.
+     *
+     * @param matrixMode True to enable matrix mode, false to disable.
+     */
+    public void setMatrixMode(boolean matrixMode) {
+        this.matrixMode = matrixMode;
+    }
+
+    /**
+     * Returns true if this transform uses matrix mode, ie transform is not specified by rotate, scale and translate -
+     * instead the matrix is used.
+     *
+     * @return True if this transform uses a matrix.
+     */
+    public boolean isMatrixMode() {
+        return matrixMode;
+    }
+
+    /**
+     * Returns a reference to the matrix in this class.
+     *
+     * @return
+     */
+    public double[] getMatrix() {
+        return matrix;
+    }
+
+    /**
+     * If matrix mode is disabled the matrix is updated with transform using rotate, scale and translate values.
+     *
+     * @return The updated matrix
+     */
+    public double[] updateMatrix() {
+        if (!matrixMode && (axisAngle != null || scale != null || translate != null)) {
+            MatrixD.setIdentity(matrix, 0);
+            MatrixD.rotateM(matrix, axisAngle);
+            MatrixD.scaleM(matrix, 0, scale);
+            MatrixD.translate(matrix, translate);
+        }
+        return matrix;
+    }
+
+    /**
+     * Updates the matrix, see {@link #updateMatrix()}, and stores it as a float matrix relative to origin.
+     * The translation is made relative in double precision before conversion to float.
+     *
+     * @param origin The relative origin, normally camera world position, x, y and z
+     * @param originIndex Index into origin where x,y and z is read
+     * @param dest
+     * @param destOffset Offset into dest where the float matrix is written
+     * @return The destination matrix
+     */
+    public float[] getRelativeMatrix(double[] origin, int originIndex, float[] dest, int destOffset) {
+        return MatrixD.toFloatRelative(updateMatrix(), 0, origin, originIndex, dest, destOffset);
+    }
+
+}
@@ -0,0 +1,266 @@
+package com.nucleus.vecmath;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import com.nucleus.vecmath.Instrumentation.Operation;
+
+/**
+ * Flattened transform hierarchy, nodes are stored in topological order - a parent is always added before its
+ * children - with a parent index array and local and world matrices in packed arrays, 16 values per node.
+ * This replaces recursive traversal with push and pop on a {@link Matrix.MatrixStack}.
+ * World matrices are calculated as parent world * local, only dirty nodes and their children are recalculated.
+ * Parallel update is done one depth level at a time, nodes on the same level do not depend on each other.
+ * This class is NOT thread safe, nodes shall not be added or changed while {@link #update()} is running.
+ *
+ * @author Richard Sahlin
+ *
+ */
+public class TransformHierarchy {
+
+    /**
+     * Parent index of root nodes
+     */
+    public final static int NO_PARENT = -1;
+
+    /**
+     * Min number of dirty nodes on a level for the level to be updated in parallel.
+     */
+    public final static int PARALLEL_THRESHOLD = 512;
+
+    private final static int DEFAULT_CAPACITY = 100;
+
+    private int[] parent;
+    private int[] depth;
+    private boolean[] dirty;
+    private float[] local;
+    private float[] world;
+    private int count = 0;
+    private int capacity;
+
+    /**
+     * Node indexes sorted by depth, levelStart[level] is the index of the first node on that level
+     */
+    private int[] levelOrder;
+    private int[] levelStart;
+    private int levels = 0;
+    private boolean levelsValid = false;
+    private boolean parallel = false;
+
+    /**
+     * Creates a new hierarchy with room for 100 nodes
+     */
+    public TransformHierarchy() {
+        init(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new hierarchy with the specified node capacity, storage will grow if more nodes are added.
+     *
+     * @param capacity Number of nodes to have storage for
+     */
+    public TransformHierarchy(int capacity) {
+        init(capacity);
+    }
+
+    private void init(int capacity) {
+        this.capacity = capacity;
+        parent = new int[capacity];
+        depth = new int[capacity];
+        dirty = new boolean[capacity];
+        local = new float[capacity * Matrix.MATRIX_ELEMENTS];
+        world = new float[capacity * Matrix.MATRIX_ELEMENTS];
+        levelOrder = new int[capacity];
+        levelStart = new int[2];
+    }
+
+    private void grow() {
+        capacity = capacity * 2;
+        parent = Arrays.copyOf(parent, capacity);
+        depth = Arrays.copyOf(depth, capacity);
+        dirty = Arrays.copyOf(dirty, capacity);
+        local = Arrays.copyOf(local, capacity * Matrix.MATRIX_ELEMENTS);
+        world = Arrays.copyOf(world, capacity * Matrix.MATRIX_ELEMENTS);
+        levelOrder = new int[capacity];
+    }
+
+    /**
+     * Adds a node with identity local matrix as child of parentIndex.
+     *
+     * @param parentIndex Index of the parent node, or {@link #NO_PARENT} for a root node
+     * @return Index of the added node
+     * @throws IllegalArgumentException If parentIndex is not an already added node
+     */
+    public int addNode(int parentIndex) {
+        if (parentIndex < NO_PARENT || parentIndex >= count) {
+            throw new IllegalArgumentException("Invalid parent index " + parentIndex);
+        }
+        if (count >= capacity) {
+            grow();
+        }
+        int node = count++;
+        parent[node] = parentIndex;
+        depth[node] = parentIndex == NO_PARENT ? 0 : depth[parentIndex] + 1;
+        Matrix.setIdentity(local, node * Matrix.MATRIX_ELEMENTS);
+        dirty[node] = true;
+        levelsValid = false;
+        return node;
+    }
+
+    /**
+     * Removes all nodes
+     */
+    public void clear() {
+        count = 0;
+        levelsValid = false;
+    }
+
+    /**
+     * Returns the number of nodes
+     *
+     * @return
+     */
+    public int getNodeCount() {
+        return count;
+    }
+
+    /**
+     * Returns the parent index of the node
+     *
+     * @param node
+     * @return Parent index or {@link #NO_PARENT}
+     */
+    public int getParent(int node) {
+        return parent[node];
+    }
+
+    /**
+     * Enables or disables parallel update of levels with at least {@link #PARALLEL_THRESHOLD} nodes.
+     *
+     * @param parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Copies the local matrix of the node and marks the node as dirty.
+     *
+     * @param node
+     * @param matrix
+     * @param offset Offset into matrix where values are read
+     */
+    public void setLocal(int node, float[] matrix, int offset) {
+        System.arraycopy(matrix, offset, local, node * Matrix.MATRIX_ELEMENTS, Matrix.MATRIX_ELEMENTS);
+        dirty[node] = true;
+    }
+
+    /**
+     * Marks the node as dirty, call this after the local matrix has been changed directly in the array returned by
+     * {@link #getLocalMatrices()}
+     *
+     * @param node
+     */
+    public void setDirty(int node) {
+        dirty[node] = true;
+    }
+
+    /**
+     * Returns the packed local matrices, node n is at offset n * 16.
+     * If values are changed {@link #setDirty(int)} must be called.
+     *
+     * @return
+     */
+    public float[] getLocalMatrices() {
+        return local;
+    }
+
+    /**
+     * Returns the packed world matrices, node n is at offset n * 16. Values are valid after {@link #update()}
+     *
+     * @return
+     */
+    public float[] getWorldMatrices() {
+        return world;
+    }
+
+    /**
+     * Updates the world matrix of dirty nodes and their children, dirty flags are cleared.
+     */
+    public void update() {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        // Parents are always before children - one pass propagates dirty flag to the whole subtree
+        for (int i = 0; i < count; i++) {
+            int p = parent[i];
+            if (p != NO_PARENT && dirty[p]) {
+                dirty[i] = true;
+            }
+        }
+        if (!parallel) {
+            for (int i = 0; i < count; i++) {
+                updateNode(i);
+            }
+        } else {
+            if (!levelsValid) {
+                sortLevels();
+            }
+            for (int level = 0; level < levels; level++) {
+                final int start = levelStart[level];
+                final int end = levelStart[level + 1];
+                if (end - start >= PARALLEL_THRESHOLD) {
+                    IntStream.range(start, end).parallel().forEach(i -> updateNode(levelOrder[i]));
+                } else {
+                    for (int i = start; i < end; i++) {
+                        updateNode(levelOrder[i]);
+                    }
+                }
+            }
+        }
+        Arrays.fill(dirty, 0, count, false);
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.HIERARCHY_UPDATE, count, startTime);
+        }
+    }
+
+    private void updateNode(int node) {
+        if (dirty[node]) {
+            int offset = node * Matrix.MATRIX_ELEMENTS;
+            int p = parent[node];
+            if (p == NO_PARENT) {
+                System.arraycopy(local, offset, world, offset, Matrix.MATRIX_ELEMENTS);
+            } else {
+                Matrix.mul4(world, p * Matrix.MATRIX_ELEMENTS, local, offset, world, offset);
+            }
+        }
+    }
+
+    /**
+     * Counting sort of nodes by depth
+     */
+    private void sortLevels() {
+        levels = 0;
+        for (int i = 0; i < count; i++) {
+            levels = Math.max(levels, depth[i] + 1);
+        }
+        if (levelStart.length < levels + 1) {
+            levelStart = new int[levels + 1];
+        }
+        Arrays.fill(levelStart, 0, levels + 1, 0);
+        for (int i = 0; i < count; i++) {
+            levelStart[depth[i] + 1]++;
+        }
+        for (int level = 0; level < levels; level++) {
+            levelStart[level + 1] += levelStart[level];
+        }
+        // Use the next level start as insert position, then shift back
+        for (int i = 0; i < count; i++) {
+            levelOrder[levelStart[depth[i]]++] = i;
+        }
+        for (int level = levels; level > 0; level--) {
+            levelStart[level] = levelStart[level - 1];
+        }
+        levelStart[0] = 0;
+        levelsValid = true;
+    }
+
+}
@@ -0,0 +1,354 @@
+package com.nucleus.vecmath;
+
+import java.nio.ByteBuffer;
+
+import com.nucleus.vecmath.Instrumentation.Operation;
+
+/**
+ * Compact binary encoding of packed {@link TRS} transforms, for snapshots and replay.
+ * Rotation is encoded as smallest three quaternion in 32 bits - 2 bits index of the largest component and 10 bits
+ * for each of the other three. Translation is quantized to 16 bits per axis within a bounds box and scale is
+ * optionally encoded as a 16 bit uniform scale, if scale is not encoded it is decoded as 1.
+ * Zero rotation, translation at the center of the bounds and scale 1 are decoded exactly, so that static
+ * identity transforms stay exact.
+ * A full transform is 10 bytes, or 12 with scale, instead of 40.
+ * Delta encoding compares the quantized values against the previous frame and only writes the parts that have
+ * changed, prefixed by a 1 byte mask. Since the quantized values are compared the decoded result is the same as for
+ * full encoding, there is no drift.
+ * Values are written to and read from the ByteBuffer using relative get and put, advancing the position.
+ *
+ * @author Richard Sahlin
+ *
+ */
+public class TransformQuantizer extends VecMath {
+
+    /**
+     * Delta mask bit set when rotation is written
+     */
+    public final static int ROTATION_CHANGED = 1;
+    /**
+     * Delta mask bit set when translation is written
+     */
+    public final static int TRANSLATION_CHANGED = 2;
+    /**
+     * Delta mask bit set when scale is written
+     */
+    public final static int SCALE_CHANGED = 4;
+
+    private final static int QUATERNION_BITS = 10;
+    private final static int QUATERNION_MASK = (1 << QUATERNION_BITS) - 1;
+    /**
+     * Step counts are even so that the midpoint of the range, eg 0 for quaternion components, is exact
+     */
+    private final static int QUATERNION_STEPS = QUATERNION_MASK - 1;
+    private final static float QUATERNION_RANGE = (float) (1 / Math.sqrt(2));
+    private final static int SHORT_MASK = 0xffff;
+    private final static int SHORT_STEPS = SHORT_MASK - 1;
+
+    private final float[] min = new float[3];
+    private final float[] max = new float[3];
+    private final float minScale;
+    private final float maxScale;
+    /**
+     * Scale is stored as offset from 1 in the range -scaleRange to scaleRange, so that scale 1 is exact
+     */
+    private final float scaleRange;
+    private final boolean encodeScale;
+
+    /**
+     * Creates a quantizer for translations within the bounds, rotation and uniform scale.
+     *
+     * @param min Min x, y and z of translation bounds
+     * @param max Max x, y and z of translation bounds, translation outside the bounds is clamped.
+     * @param minScale Min uniform scale, scale outside min and max is clamped.
+     * @param maxScale Max uniform scale
+     * @throws IllegalArgumentException If max is not larger than min
+     */
+    public TransformQuantizer(float[] min, float[] max, float minScale, float maxScale) {
+        this(min, max, minScale, maxScale, true);
+    }
+
+    /**
+     * Creates a quantizer for translations within the bounds and rotation, scale is not encoded.
+     *
+     * @param min Min x, y and z of translation bounds
+     * @param max Max x, y and z of translation bounds, translation outside the bounds is clamped.
+     * @throws IllegalArgumentException If max is not larger than min
+     */
+    public TransformQuantizer(float[] min, float[] max) {
+        this(min, max, 0, 1, false);
+    }
+
+    private TransformQuantizer(float[] min, float[] max, float minScale, float maxScale, boolean encodeScale) {
+        for (int i = 0; i < 3; i++) {
+            if (max[i] <= min[i]) {
+                throw new IllegalArgumentException("Invalid bounds, max " + max[i] + " <= min " + min[i]);
+            }
+            this.min[i] = min[i];
+            this.max[i] = max[i];
+        }
+        if (encodeScale && maxScale <= minScale) {
+            throw new IllegalArgumentException("Invalid scale, max " + maxScale + " <= min " + minScale);
+        }
+        this.minScale = minScale;
+        this.maxScale = maxScale;
+        scaleRange = Math.max(maxScale - 1, 1 - minScale);
+        this.encodeScale = encodeScale;
+    }
+
+    /**
+     * Returns the number of bytes for a fully encoded transform
+     *
+     * @return
+     */
+    public int getEncodedSize() {
+        return encodeScale ? 12 : 10;
+    }
+
+    /**
+     * Encodes count packed transforms into the buffer.
+     *
+     * @param trs Packed transforms, {@link TRS#ELEMENTS} values each
+     * @param index Index into trs where the first transform is read
+     * @param count Number of transforms
+     * @param buffer Destination, must have room for count * {@link #getEncodedSize()} bytes
+     */
+    public void encode(float[] trs, int index, int count, ByteBuffer buffer) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(encodeQuaternion(trs, index + TRS.ROTATION));
+            putTranslation(trs, index, buffer);
+            if (encodeScale) {
+                buffer.putShort((short) quantizeScale(trs[index + TRS.SCALE]));
+            }
+            index += TRS.ELEMENTS;
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.QUANTIZE, count, startTime);
+        }
+    }
+
+    /**
+     * Decodes count transforms from the buffer into packed transforms.
+     *
+     * @param buffer Source
+     * @param trs Destination packed transforms
+     * @param index Index into trs where the first transform is written
+     * @param count Number of transforms
+     */
+    public void decode(ByteBuffer buffer, float[] trs, int index, int count) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        for (int i = 0; i < count; i++) {
+            decodeQuaternion(buffer.getInt(), trs, index + TRS.ROTATION);
+            getTranslation(buffer, trs, index);
+            getScale(buffer, trs, index);
+            index += TRS.ELEMENTS;
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.QUANTIZE, count, startTime);
+        }
+    }
+
+    /**
+     * Delta encodes count packed transforms against the transforms of the previous frame. For each transform a mask
+     * byte is written, followed by the parts that have changed when quantized.
+     *
+     * @param trs Packed transforms of this frame
+     * @param previous Packed transforms of the previous frame, as passed to encode for that frame
+     * @param index Index into trs and previous where the first transform is read
+     * @param count Number of transforms
+     * @param buffer Destination, must have room for count * ({@link #getEncodedSize()} + 1) bytes
+     */
+    public void encodeDelta(float[] trs, float[] previous, int index, int count, ByteBuffer buffer) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        for (int i = 0; i < count; i++) {
+            int q = encodeQuaternion(trs, index + TRS.ROTATION);
+            int mask = q != encodeQuaternion(previous, index + TRS.ROTATION) ? ROTATION_CHANGED : 0;
+            for (int axis = 0; axis < 3; axis++) {
+                if (quantize(trs[index + axis], min[axis], max[axis], SHORT_STEPS) != quantize(
+                        previous[index + axis], min[axis], max[axis], SHORT_STEPS)) {
+                    mask |= TRANSLATION_CHANGED;
+                    break;
+                }
+            }
+            int scale = 0;
+            if (encodeScale) {
+                scale = quantizeScale(trs[index + TRS.SCALE]);
+                if (scale != quantizeScale(previous[index + TRS.SCALE])) {
+                    mask |= SCALE_CHANGED;
+                }
+            }
+            buffer.put((byte) mask);
+            if ((mask & ROTATION_CHANGED) != 0) {
+                buffer.putInt(q);
+            }
+            if ((mask & TRANSLATION_CHANGED) != 0) {
+                putTranslation(trs, index, buffer);
+            }
+            if ((mask & SCALE_CHANGED) != 0) {
+                buffer.putShort((short) scale);
+            }
+            index += TRS.ELEMENTS;
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.QUANTIZE, count, startTime);
+        }
+    }
+
+    /**
+     * Decodes count delta encoded transforms from the buffer, trs shall contain the decoded transforms of the
+     * previous frame - only the parts that have changed are updated.
+     *
+     * @param buffer Source
+     * @param trs Packed transforms of the previous frame, updated to this frame
+     * @param index Index into trs where the first transform is read and written
+     * @param count Number of transforms
+     */
+    public void decodeDelta(ByteBuffer buffer, float[] trs, int index, int count) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        for (int i = 0; i < count; i++) {
+            int mask = buffer.get();
+            if ((mask & ROTATION_CHANGED) != 0) {
+                decodeQuaternion(buffer.getInt(), trs, index + TRS.ROTATION);
+            }
+            if ((mask & TRANSLATION_CHANGED) != 0) {
+                getTranslation(buffer, trs, index);
+            }
+            if ((mask & SCALE_CHANGED) != 0) {
+                float scale = dequantizeScale(buffer.getShort() & SHORT_MASK);
+                trs[index + TRS.SCALE] = scale;
+                trs[index + TRS.SCALE + 1] = scale;
+                trs[index + TRS.SCALE + 2] = scale;
+            }
+            index += TRS.ELEMENTS;
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.QUANTIZE, count, startTime);
+        }
+    }
+
+    private void putTranslation(float[] trs, int index, ByteBuffer buffer) {
+        buffer.putShort((short) quantize(trs[index + TRS.TRANSLATE], min[X], max[X], SHORT_STEPS));
+        buffer.putShort((short) quantize(trs[index + TRS.TRANSLATE + 1], min[Y], max[Y], SHORT_STEPS));
+        buffer.putShort((short) quantize(trs[index + TRS.TRANSLATE + 2], min[Z], max[Z], SHORT_STEPS));
+    }
+
+    private void getTranslation(ByteBuffer buffer, float[] trs, int index) {
+        trs[index + TRS.TRANSLATE] = dequantize(buffer.getShort() & SHORT_MASK, min[X], max[X], SHORT_STEPS);
+        trs[index + TRS.TRANSLATE + 1] = dequantize(buffer.getShort() & SHORT_MASK, min[Y], max[Y], SHORT_STEPS);
+        trs[index + TRS.TRANSLATE + 2] = dequantize(buffer.getShort() & SHORT_MASK, min[Z], max[Z], SHORT_STEPS);
+    }
+
+    private void getScale(ByteBuffer buffer, float[] trs, int index) {
+        float scale = 1;
+        if (encodeScale) {
+            scale = dequantizeScale(buffer.getShort() & SHORT_MASK);
+        }
+        trs[index + TRS.SCALE] = scale;
+        trs[index + TRS.SCALE + 1] = scale;
+        trs[index + TRS.SCALE + 2] = scale;
+    }
+
+    private int quantizeScale(float scale) {
+        return quantize(Math.min(maxScale, Math.max(minScale, scale)) - 1, -scaleRange, scaleRange, SHORT_STEPS);
+    }
+
+    private float dequantizeScale(int quantized) {
+        return 1 + dequantize(quantized, -scaleRange, scaleRange, SHORT_STEPS);
+    }
+
+    /**
+     * Quantizes the value in range min to max into an unsigned integer 0 to steps, values outside the range are
+     * clamped.
+     *
+     * @param value
+     * @param min
+     * @param max
+     * @param steps Max quantized value, use an even number so that the midpoint of the range is exact
+     * @return Quantized value
+     */
+    public static int quantize(float value, float min, float max, int steps) {
+        float normalized = (value - min) / (max - min);
+        if (normalized <= 0) {
+            return 0;
+        }
+        if (normalized >= 1) {
+            return steps;
+        }
+        return (int) (normalized * steps + 0.5f);
+    }
+
+    /**
+     * Returns the value in range min to max for a value quantized by {@link #quantize(float, float, float, int)}
+     *
+     * @param quantized
+     * @param min
+     * @param max
+     * @param steps Max quantized value
+     * @return The value
+     */
+    public static float dequantize(int quantized, float min, float max, int steps) {
+        // Relative to the midpoint so that the midpoint is exact when steps is even
+        float half = (max - min) * 0.5f;
+        return (min + half) + half * (2 * quantized - steps) / steps;
+    }
+
+    /**
+     * Encodes the unit quaternion, x, y, z, w, as smallest three in 32 bits. The largest component is dropped and
+     * recalculated when decoding, the other three are in the range -1 / sqrt(2) to 1 / sqrt(2)
+     *
+     * @param quaternion
+     * @param index Index into quaternion where x, y, z and w is read
+     * @return The encoded quaternion
+     */
+    public static int encodeQuaternion(float[] quaternion, int index) {
+        int largest = 0;
+        float largestValue = Math.abs(quaternion[index]);
+        for (int i = 1; i < 4; i++) {
+            float value = Math.abs(quaternion[index + i]);
+            if (value > largestValue) {
+                largest = i;
+                largestValue = value;
+            }
+        }
+        // q and -q is the same rotation, make the dropped component positive
+        float sign = quaternion[index + largest] < 0 ? -1 : 1;
+        int encoded = largest;
+        for (int i = 0; i < 4; i++) {
+            if (i != largest) {
+                encoded = (encoded << QUATERNION_BITS) | quantize(quaternion[index + i] * sign, -QUATERNION_RANGE,
+                        QUATERNION_RANGE, QUATERNION_STEPS);
+            }
+        }
+        return encoded;
+    }
+
+    /**
+     * Decodes a quaternion encoded by {@link #encodeQuaternion(float[], int)}, the result is normalized.
+     *
+     * @param encoded
+     * @param quaternion Destination
+     * @param index Index into quaternion where x, y, z and w is written
+     * @return The quaternion
+     */
+    public static float[] decodeQuaternion(int encoded, float[] quaternion, int index) {
+        int largest = encoded >>> (QUATERNION_BITS * 3);
+        float sum = 0;
+        for (int i = 3; i >= 0; i--) {
+            if (i != largest) {
+                float value = dequantize(encoded & QUATERNION_MASK, -QUATERNION_RANGE, QUATERNION_RANGE,
+                        QUATERNION_STEPS);
+                quaternion[index + i] = value;
+                sum += value * value;
+                encoded >>>= QUATERNION_BITS;
+            }
+        }
+        quaternion[index + largest] = (float) Math.sqrt(Math.max(0, 1 - sum));
+        float len = 1 / (float) Math.sqrt(sum + quaternion[index + largest] * quaternion[index + largest]);
+        for (int i = 0; i < 4; i++) {
+            quaternion[index + i] *= len;
+        }
+        return quaternion;
+    }
+
+}
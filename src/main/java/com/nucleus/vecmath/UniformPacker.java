@@ -0,0 +1,289 @@
+package com.nucleus.vecmath;
+
+import java.nio.ByteBuffer;
+
+import com.nucleus.vecmath.Instrumentation.Operation;
+
+/**
+ * Static utilities to pack matrices and vectors into a ByteBuffer using the GLSL std140 or std430 layout rules,
+ * for uniform and shader storage buffers.
+ * All methods write using absolute put at a byte offset, buffer position is not changed - the byte order of the
+ * buffer is used, this shall normally be native order. The offset is aligned to the base alignment of the type
+ * before writing and the byte offset after the written value is returned, so that calls can be chained to fill a
+ * block.
+ * {@link Matrix} is row major, set transpose to true to write column major matrices as expected by GLSL, unless
+ * the block is declared with layout(row_major). The transpose is done while writing, no temp arrays are used.
+ *
+ * @author Richard Sahlin
+ *
+ */
+public class UniformPacker {
+
+    /**
+     * The GLSL buffer layouts
+     */
+    public enum Layout {
+        /**
+         * Uniform block layout, array elements are aligned to vec4
+         */
+        STD140,
+        /**
+         * Shader storage block layout, arrays of scalars and vec2 are tightly packed
+         */
+        STD430;
+    }
+
+    /**
+     * Number of bytes in a float
+     */
+    public final static int FLOAT_BYTES = 4;
+    /**
+     * Base alignment of vec3, vec4 and matrix columns, in bytes
+     */
+    public final static int VEC4_ALIGNMENT = 16;
+    /**
+     * Number of bytes for a mat4
+     */
+    public final static int MAT4_BYTES = 64;
+    /**
+     * Number of bytes for a mat3, each column is padded to vec4
+     */
+    public final static int MAT3_BYTES = 48;
+
+    /**
+     * Rounds the byte offset up to the next multiple of alignment
+     *
+     * @param byteOffset
+     * @param alignment Alignment in bytes, must be power of 2
+     * @return The aligned byte offset
+     */
+    public static int align(int byteOffset, int alignment) {
+        return (byteOffset + alignment - 1) & -alignment;
+    }
+
+    /**
+     * Returns the stride, in bytes, between elements in an array of float, vec2, vec3 or vec4
+     *
+     * @param layout
+     * @param components Number of components in the array element, 1 to 4
+     * @return Array stride in bytes
+     */
+    public static int getArrayStride(Layout layout, int components) {
+        if (components == 3 || layout == Layout.STD140) {
+            return VEC4_ALIGNMENT;
+        }
+        return components * FLOAT_BYTES;
+    }
+
+    /**
+     * Writes a 4 x 4 matrix, 64 bytes, aligned to 16 bytes
+     *
+     * @param buffer Destination buffer
+     * @param byteOffset Byte offset into buffer, is aligned to 16 bytes before writing
+     * @param matrix Source matrix, row major
+     * @param offset Offset into matrix where values are read
+     * @param transpose True to write column major
+     * @return Byte offset after the written matrix
+     */
+    public static int putMatrix(ByteBuffer buffer, int byteOffset, float[] matrix, int offset, boolean transpose) {
+        byteOffset = align(byteOffset, VEC4_ALIGNMENT);
+        if (transpose) {
+            for (int column = 0; column < 4; column++) {
+                buffer.putFloat(byteOffset, matrix[offset + column]);
+                buffer.putFloat(byteOffset + 4, matrix[offset + column + 4]);
+                buffer.putFloat(byteOffset + 8, matrix[offset + column + 8]);
+                buffer.putFloat(byteOffset + 12, matrix[offset + column + 12]);
+                byteOffset += VEC4_ALIGNMENT;
+            }
+        } else {
+            for (int i = 0; i < Matrix.MATRIX_ELEMENTS; i++) {
+                buffer.putFloat(byteOffset, matrix[offset + i]);
+                byteOffset += FLOAT_BYTES;
+            }
+        }
+        return byteOffset;
+    }
+
+    /**
+     * Writes count packed 4 x 4 matrices as an array of mat4, the array stride is 64 bytes in both std140 and std430.
+     * Use this for instance matrices.
+     *
+     * @param buffer Destination buffer
+     * @param byteOffset Byte offset into buffer, is aligned to 16 bytes before writing
+     * @param matrices Packed source matrices, row major, 16 values each
+     * @param offset Offset into matrices where the first matrix is read
+     * @param count Number of matrices
+     * @param transpose True to write column major
+     * @return Byte offset after the written matrices
+     */
+    public static int putMatrices(ByteBuffer buffer, int byteOffset, float[] matrices, int offset, int count,
+            boolean transpose) {
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        for (int n = 0; n < count; n++) {
+            byteOffset = putMatrix(buffer, byteOffset, matrices, offset, transpose);
+            offset += Matrix.MATRIX_ELEMENTS;
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.UNIFORM_PACK, count, startTime);
+        }
+        return byteOffset;
+    }
+
+    /**
+     * Updates the matrix of the transform and writes it as a 4 x 4 matrix
+     *
+     * @param buffer Destination buffer
+     * @param byteOffset Byte offset into buffer, is aligned to 16 bytes before writing
+     * @param transform
+     * @param transpose True to write column major
+     * @return Byte offset after the written matrix
+     */
+    public static int putTransform(ByteBuffer buffer, int byteOffset, Transform transform, boolean transpose) {
+        return putMatrix(buffer, byteOffset, transform.updateMatrix(), 0, transpose);
+    }
+
+    /**
+     * Writes a row major 3 x 3 matrix, for instance a normal matrix from
+     * {@link Matrix#normalM(float[], int, float[], int)}, as mat3 - each of the 3 columns (or rows if not transposed)
+     * is padded to vec4, 48 bytes in both std140 and std430.
+     *
+     * @param buffer Destination buffer
+     * @param byteOffset Byte offset into buffer, is aligned to 16 bytes before writing
+     * @param matrix Source 3 x 3 matrix, row major
+     * @param offset Offset into matrix where values are read
+     * @param transpose True to write column major
+     * @return Byte offset after the written matrix
+     */
+    public static int putMatrix3(ByteBuffer buffer, int byteOffset, float[] matrix, int offset, boolean transpose) {
+        byteOffset = align(byteOffset, VEC4_ALIGNMENT);
+        int step = transpose ? 1 : 3;
+        int element = transpose ? 3 : 1;
+        for (int i = 0; i < 3; i++) {
+            int index = offset + i * step;
+            buffer.putFloat(byteOffset, matrix[index]);
+            buffer.putFloat(byteOffset + 4, matrix[index + element]);
+            buffer.putFloat(byteOffset + 8, matrix[index + element * 2]);
+            buffer.putFloat(byteOffset + 12, 0);
+            byteOffset += VEC4_ALIGNMENT;
+        }
+        return byteOffset;
+    }
+
+    /**
+     * Writes the upper 3 x 3 of a 4 x 4 matrix as mat3, each column (or row if not transposed) is padded to vec4,
+     * 48 bytes in both std140 and std430.
+     *
+     * @param buffer Destination buffer
+     * @param byteOffset Byte offset into buffer, is aligned to 16 bytes before writing
+     * @param matrix Source 4 x 4 matrix, row major
+     * @param offset Offset into matrix where values are read
+     * @param transpose True to write column major
+     * @return Byte offset after the written matrix
+     */
+    public static int putUpperMatrix3(ByteBuffer buffer, int byteOffset, float[] matrix, int offset,
+            boolean transpose) {
+        byteOffset = align(byteOffset, VEC4_ALIGNMENT);
+        int step = transpose ? 1 : 4;
+        int element = transpose ? 4 : 1;
+        for (int i = 0; i < 3; i++) {
+            int index = offset + i * step;
+            buffer.putFloat(byteOffset, matrix[index]);
+            buffer.putFloat(byteOffset + 4, matrix[index + element]);
+            buffer.putFloat(byteOffset + 8, matrix[index + element * 2]);
+            buffer.putFloat(byteOffset + 12, 0);
+            byteOffset += VEC4_ALIGNMENT;
+        }
+        return byteOffset;
+    }
+
+    /**
+     * Writes a vec3 aligned to 16 bytes, the returned offset is directly after the z component so that a following
+     * float is packed into the 4th component - as specified by std140 and std430.
+     *
+     * @param buffer Destination buffer
+     * @param byteOffset Byte offset into buffer, is aligned to 16 bytes before writing
+     * @param vector Source vector
+     * @param index Index into vector where x, y and z is read
+     * @return Byte offset after the written vector
+     */
+    public static int putVec3(ByteBuffer buffer, int byteOffset, float[] vector, int index) {
+        byteOffset = align(byteOffset, VEC4_ALIGNMENT);
+        buffer.putFloat(byteOffset, vector[index]);
+        buffer.putFloat(byteOffset + 4, vector[index + 1]);
+        buffer.putFloat(byteOffset + 8, vector[index + 2]);
+        return byteOffset + 12;
+    }
+
+    /**
+     * Writes a vec4 aligned to 16 bytes
+     *
+     * @param buffer Destination buffer
+     * @param byteOffset Byte offset into buffer, is aligned to 16 bytes before writing
+     * @param vector Source vector
+     * @param index Index into vector where x, y, z and w is read
+     * @return Byte offset after the written vector
+     */
+    public static int putVec4(ByteBuffer buffer, int byteOffset, float[] vector, int index) {
+        byteOffset = align(byteOffset, VEC4_ALIGNMENT);
+        buffer.putFloat(byteOffset, vector[index]);
+        buffer.putFloat(byteOffset + 4, vector[index + 1]);
+        buffer.putFloat(byteOffset + 8, vector[index + 2]);
+        buffer.putFloat(byteOffset + 12, vector[index + 3]);
+        return byteOffset + 16;
+    }
+
+    /**
+     * Writes a float aligned to 4 bytes
+     *
+     * @param buffer Destination buffer
+     * @param byteOffset Byte offset into buffer, is aligned to 4 bytes before writing
+     * @param value
+     * @return Byte offset after the written value
+     */
+    public static int putFloat(ByteBuffer buffer, int byteOffset, float value) {
+        byteOffset = align(byteOffset, FLOAT_BYTES);
+        buffer.putFloat(byteOffset, value);
+        return byteOffset + FLOAT_BYTES;
+    }
+
+    /**
+     * Writes count packed vectors, with the number of components, as an array using the array stride of the
+     * layout, see {@link #getArrayStride(Layout, int)} - vec3 arrays are padded to vec4 and in std140 all arrays
+     * are padded to vec4. Padding is set to 0.
+     *
+     * @param layout std140 or std430
+     * @param buffer Destination buffer
+     * @param byteOffset Byte offset into buffer, is aligned to the array alignment before writing
+     * @param vectors Packed source vectors
+     * @param index Index into vectors where the first vector is read
+     * @param components Number of components in each vector, 1 to 4
+     * @param count Number of vectors
+     * @return Byte offset after the written array
+     * @throws IllegalArgumentException If components is not 1 to 4
+     */
+    public static int putArray(Layout layout, ByteBuffer buffer, int byteOffset, float[] vectors, int index,
+            int components, int count) {
+        if (components < 1 || components > 4) {
+            throw new IllegalArgumentException("Invalid number of components " + components);
+        }
+        long startTime = Instrumentation.ENABLED ? Instrumentation.begin() : 0;
+        int stride = getArrayStride(layout, components);
+        byteOffset = align(byteOffset, stride);
+        for (int n = 0; n < count; n++) {
+            int b = byteOffset;
+            for (int c = 0; c < components; c++) {
+                buffer.putFloat(b, vectors[index++]);
+                b += FLOAT_BYTES;
+            }
+            for (int end = byteOffset + stride; b < end; b += FLOAT_BYTES) {
+                buffer.putFloat(b, 0);
+            }
+            byteOffset += stride;
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.end(Operation.UNIFORM_PACK, count, startTime);
+        }
+        return byteOffset;
+    }
+
+}
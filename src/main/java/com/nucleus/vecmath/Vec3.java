@@ -1,5 +1,9 @@
 package com.nucleus.vecmath;
 
+import java.nio.FloatBuffer;
+
+import com.nucleus.vecmath.Instrumentation.Operation;
+
 /**
  * 3 Component vector and utilities
  * 
@@ -181,6 +185,9 @@ public class Vec3 extends VecMath {
      * @param index
      */
     public static final void normalize(float[] values, int index) {
+        if (Instrumentation.ENABLED) {
+            Instrumentation.count(Operation.VEC3_NORMALIZE);
+        }
         float len = (float) Math
                 .sqrt((values[index + X] * values[index + X])
                         + (values[index + Y] * values[index + Y])
@@ -277,6 +284,9 @@ public class Vec3 extends VecMath {
      * @return ax * bx + ay * by + az * bz
      */
     public static float dot(float[] vec1, int index1, float[] vec2, int index2) {
+        if (Instrumentation.ENABLED) {
+            Instrumentation.count(Operation.VEC3_DOT);
+        }
         return vec1[index1++] * vec2[index2++] + vec1[index1++] * vec2[index2++] + vec1[index1] * vec2[index2];
     }
 
@@ -375,6 +385,9 @@ public class Vec3 extends VecMath {
      * @return The result array
      */
     public static float[] cross(float[] vec1, int index1, float[] vec2, int index2, float[] result, int rIndex) {
+        if (Instrumentation.ENABLED) {
+            Instrumentation.count(Operation.VEC3_CROSS);
+        }
         result[rIndex++] = vec1[1 + index1] * vec2[2 + index2] - vec1[2 + index1] * vec2[1 + index2];
         result[rIndex++] = vec1[2 + index1] * vec2[0 + index2] - vec1[0 + index1] * vec2[2 + index2];
         result[rIndex] = vec1[0 + index1] * vec2[1 + index2] - vec1[1 + index1] * vec2[0 + index2];
@@ -615,6 +628,9 @@ public class Vec3 extends VecMath {
      * @return New 3 component vector that is the cross product of vector1 and vector2
      */
     public final static float[] cross3(float[] vector1, float[] vector2) {
+        if (Instrumentation.ENABLED) {
+            Instrumentation.count(Operation.VEC3_CROSS);
+        }
         float[] cross = new float[3];
         cross[0] = vector1[Y] * vector2[Z] - vector1[Z] * vector2[Y];
         cross[1] = vector1[Z] * vector2[X] - vector1[X] * vector2[Z];
@@ -684,6 +700,9 @@ public class Vec3 extends VecMath {
      * @return The destination array
      */
     public final static float[] cross3(float[] data, int v1, int v2, float[] dest, int destIndex) {
+        if (Instrumentation.ENABLED) {
+            Instrumentation.count(Operation.VEC3_CROSS);
+        }
         dest[destIndex++] = data[v1 + Y] * data[v2 + Z] - data[v1 + Z] * data[v2 + Y];
         dest[destIndex++] = data[v1 + Z] * data[v2 + X] - data[v1 + X] * data[v2 + Z];
         dest[destIndex++] = data[v1 + X] * data[v2 + Y] - data[v1 + Y] * data[v2 + X];
@@ -734,4 +753,81 @@ public class Vec3 extends VecMath {
         System.arraycopy(source, sIndex, dest, dIndex, 3);
     }
 
+    /**
+     * Normalizes the vector at index in the buffer, using absolute get and put.
+     *
+     * @param values
+     * @param index
+     */
+    public static void normalize(FloatBuffer values, int index) {
+        if (Instrumentation.ENABLED) {
+            Instrumentation.count(Operation.VEC3_NORMALIZE);
+        }
+        float x = values.get(index);
+        float y = values.get(index + 1);
+        float z = values.get(index + 2);
+        float len = (float) Math.sqrt(x * x + y * y + z * z);
+        values.put(index, x / len);
+        values.put(index + 1, y / len);
+        values.put(index + 2, z / len);
+    }
+
+    /**
+     * Normalizes count packed vectors in the buffer, using absolute get and put.
+     *
+     * @param values
+     * @param index Index of the first vector
+     * @param count Number of vectors to normalize
+     */
+    public static void normalize(FloatBuffer values, int index, int count) {
+        for (int i = 0; i < count; i++) {
+            normalize(values, index);
+            index += 3;
+        }
+    }
+
+    /**
+     * returns ax * bx + ay * by + az * bz, using absolute get.
+     *
+     * @param vec1 ax, ay, az
+     * @param vec2 bx, by, bz
+     * @return ax * bx + ay * by + az * bz
+     */
+    public static float dot(FloatBuffer vec1, int index1, FloatBuffer vec2, int index2) {
+        if (Instrumentation.ENABLED) {
+            Instrumentation.count(Operation.VEC3_DOT);
+        }
+        return vec1.get(index1) * vec2.get(index2) + vec1.get(index1 + 1) * vec2.get(index2 + 1)
+                + vec1.get(index1 + 2) * vec2.get(index2 + 2);
+    }
+
+    /**
+     * Calculates the cross product of vec1 X vec2 and stores in result, using absolute get and put.
+     * Result may be the same as vec1 or vec2.
+     *
+     * @param vec1
+     * @param index1
+     * @param vec2
+     * @param index2
+     * @param result
+     * @param rIndex
+     * @return The result buffer
+     */
+    public static FloatBuffer cross(FloatBuffer vec1, int index1, FloatBuffer vec2, int index2, FloatBuffer result,
+            int rIndex) {
+        if (Instrumentation.ENABLED) {
+            Instrumentation.count(Operation.VEC3_CROSS);
+        }
+        float ax = vec1.get(index1);
+        float ay = vec1.get(index1 + 1);
+        float az = vec1.get(index1 + 2);
+        float bx = vec2.get(index2);
+        float by = vec2.get(index2 + 1);
+        float bz = vec2.get(index2 + 2);
+        result.put(rIndex, ay * bz - az * by);
+        result.put(rIndex + 1, az * bx - ax * bz);
+        result.put(rIndex + 2, ax * by - ay * bx);
+        return result;
+    }
+
 }
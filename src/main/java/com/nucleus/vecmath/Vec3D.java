@@ -0,0 +1,379 @@
+package com.nucleus.vecmath;
+
+/**
+ * Double precision 3 Component vector and utilities, same operations as {@link Vec3}.
+ * Use for positions that are too large for float, for instance world positions in large worlds.
+ *
+ * @author Richard Sahlin
+ *
+ */
+public class Vec3D extends VecMath {
+
+    /**
+     * The double Vector values.
+     */
+    public double[] values = new double[3];
+
+    /**
+     * Constructor with 3 values for x, y and z.
+     *
+     * @param x
+     * @param y
+     * @param z
+     */
+    public Vec3D(double x, double y, double z) {
+        set(x, y, z);
+    }
+
+    /**
+     * Constructor with array and index as parameter, copy the values from the
+     * specified index to the vector.
+     *
+     * @param values Array containing values.
+     * @param index Index into the values array where values are read.
+     * @throws IllegalArgumentException If values is null or
+     * there is not enough values in the values array, must be at least index + 3
+     */
+    public Vec3D(double[] values, int index) {
+        set(values, index);
+    }
+
+    /**
+     * Constructor with Vec3D as source.
+     *
+     * @param source
+     * @throws IllegalArgumentException If source is null
+     */
+    public Vec3D(Vec3D source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Source vector is null");
+        }
+        set(source);
+    }
+
+    /**
+     * Negate the values and return.
+     *
+     * @return
+     */
+    public Vec3D negate() {
+        values[0] = -values[0];
+        values[1] = -values[1];
+        values[2] = -values[2];
+        return this;
+    }
+
+    /**
+     * Copy the values from the specified double array.
+     *
+     * @param setValues
+     * @param index
+     * @throws IllegalArgumentException If values is null or does not contain index +
+     * 3 values.
+     */
+    public void set(double[] setValues, int index) {
+        if (setValues == null || setValues.length < index + 3) {
+            throw new IllegalArgumentException("Invalid parameter");
+        }
+        System.arraycopy(setValues, index, values, 0, 3);
+    }
+
+    /**
+     * Copy the contents of the source Vector into this Vector.
+     *
+     * @param source
+     * @throws IllegalArgumentException If source is null.
+     */
+    public Vec3D set(Vec3D source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Source vector is null");
+        }
+        System.arraycopy(source.values, 0, values, 0, 3);
+        return this;
+    }
+
+    /**
+     * Set the values of this Vector
+     *
+     * @param x
+     * @param y
+     * @param z
+     */
+    public void set(double x, double y, double z) {
+        values[0] = x;
+        values[1] = y;
+        values[2] = z;
+    }
+
+    /**
+     * Set Vector to 0
+     */
+    public void clear() {
+        values[X] = 0;
+        values[Y] = 0;
+        values[Z] = 0;
+    }
+
+    /**
+     * Normalize to unit length
+     */
+    public Vec3D normalize() {
+        normalize(values, 0);
+        return this;
+    }
+
+    /**
+     * Normalizes the vector at index
+     *
+     * @param values
+     * @param index
+     */
+    public static final void normalize(double[] values, int index) {
+        double len = Math.sqrt((values[index + X] * values[index + X])
+                + (values[index + Y] * values[index + Y])
+                + (values[index + Z] * values[index + Z]));
+        values[index + X] = values[index + X] / len;
+        values[index + Y] = values[index + Y] / len;
+        values[index + Z] = values[index + Z] / len;
+    }
+
+    /**
+     * Calculate the length of the Vector.
+     *
+     * @return The length of the vector.
+     */
+    public double length() {
+        return length(values, 0);
+    }
+
+    /**
+     * Calculate the length of the vector at index.
+     * Note that no error checking is done, the source array must contain 3 values at index.
+     *
+     * @param vector Array with vector values
+     * @param index Index into array where vector starts.
+     * @return The length of the vector
+     */
+    public final static double length(double[] vector, int index) {
+        return Math.sqrt((vector[X + index] * vector[X + index])
+                + (vector[Y + index] * vector[Y + index])
+                + (vector[Z + index] * vector[Z + index]));
+    }
+
+    /**
+     * Calculate the dot product between this vector and 3 values in the array (x,y,z).
+     *
+     * @param vector2
+     * @param index
+     * @return The dot product
+     */
+    public double dot(double[] vector2, int index) {
+        return values[X] * vector2[index++]
+                + values[Y] * vector2[index++]
+                + values[Z] * vector2[index];
+    }
+
+    /**
+     * returns ax * bx + ay * by + az * bz
+     *
+     * @param vec1 ax, ay, az
+     * @param vec2 bx, by, bz
+     * @return ax * bx + ay * by + az * bz
+     */
+    public static double dot(double[] vec1, int index1, double[] vec2, int index2) {
+        return vec1[index1++] * vec2[index2++] + vec1[index1++] * vec2[index2++] + vec1[index1] * vec2[index2];
+    }
+
+    /**
+     * Calculates the cross product of vec1 X vec2 and stores in result
+     * cx = ay * bz - az * by
+     * cy = az * bx - ax * bz
+     * cz = ax * by - ay * bx
+     *
+     * @param vec1
+     * @param index1
+     * @param vec2
+     * @param index2
+     * @param result
+     * @param rIndex
+     * @return The result array
+     */
+    public static double[] cross(double[] vec1, int index1, double[] vec2, int index2, double[] result,
+            int rIndex) {
+        double x = vec1[1 + index1] * vec2[2 + index2] - vec1[2 + index1] * vec2[1 + index2];
+        double y = vec1[2 + index1] * vec2[0 + index2] - vec1[0 + index1] * vec2[2 + index2];
+        double z = vec1[0 + index1] * vec2[1 + index2] - vec1[1 + index1] * vec2[0 + index2];
+        result[rIndex++] = x;
+        result[rIndex++] = y;
+        result[rIndex] = z;
+        return result;
+    }
+
+    /**
+     * Add the specified Vector to this Vector.
+     *
+     * @param add The Vector to add.
+     */
+    public Vec3D add(Vec3D add) {
+        values[0] += add.values[0];
+        values[1] += add.values[1];
+        values[2] += add.values[2];
+        return this;
+    }
+
+    /**
+     * Add the specified values to this Vector.
+     *
+     * @param x The x value to add.
+     * @param y The y value to add
+     * @param z The z value to add
+     */
+    public void add(double x, double y, double z) {
+        values[0] += x;
+        values[1] += y;
+        values[2] += z;
+    }
+
+    /**
+     * Subtract the specified Vector from this Vector.
+     *
+     * @param sub The Vector to subtract.
+     */
+    public void sub(Vec3D sub) {
+        values[0] -= sub.values[0];
+        values[1] -= sub.values[1];
+        values[2] -= sub.values[2];
+    }
+
+    /**
+     * Subtract the specified values from this Vector.
+     *
+     * @param x The x value to subtract.
+     * @param y The y value to subtract
+     * @param z The z value to subtract
+     */
+    public void sub(double x, double y, double z) {
+        values[0] -= x;
+        values[1] -= y;
+        values[2] -= z;
+    }
+
+    /**
+     * Multiply this Vector with a scalar.
+     *
+     * @param scalar The scalar to multiply with
+     */
+    public void mult(double scalar) {
+        values[0] *= scalar;
+        values[1] *= scalar;
+        values[2] *= scalar;
+    }
+
+    /**
+     * Adds the contents of vector1 and vector2 and stores in result.
+     *
+     * @param vector1
+     * @param v1Index
+     * @param vector2
+     * @param v2Index
+     * @param result
+     * @param rIndex
+     * @return The result array
+     */
+    public final static double[] add(double[] vector1, int v1Index, double[] vector2, int v2Index,
+            double[] result, int rIndex) {
+        result[rIndex++] = vector1[v1Index++] + vector2[v2Index++];
+        result[rIndex++] = vector1[v1Index++] + vector2[v2Index++];
+        result[rIndex] = vector1[v1Index] + vector2[v2Index];
+        return result;
+    }
+
+    /**
+     * Subtract the vector s from m and store in r.
+     * r may be s or m.
+     *
+     * @param m
+     * @param mIndex
+     * @param s
+     * @param sIndex
+     * @param r The result (m - s) is stored here
+     * @param rIndex
+     */
+    public final static void subtract(double[] m, int mIndex, double[] s, int sIndex, double[] r, int rIndex) {
+        r[rIndex++] = m[mIndex++] - s[sIndex++];
+        r[rIndex++] = m[mIndex++] - s[sIndex++];
+        r[rIndex] = m[mIndex] - s[sIndex];
+    }
+
+    /**
+     * Multiply the vec by a scalar and store in result
+     *
+     * @param vec
+     * @param vIndex
+     * @param scalar
+     * @param result
+     * @param rIndex
+     */
+    public final static void mul(double[] vec, int vIndex, double scalar, double[] result, int rIndex) {
+        result[rIndex++] = vec[vIndex++] * scalar;
+        result[rIndex++] = vec[vIndex++] * scalar;
+        result[rIndex] = vec[vIndex] * scalar;
+    }
+
+    /**
+     * Creates a vector from pos1 to pos2 (subtracting pos1 from pos2) and storing the result in resultVec
+     * Result is not unit vector (not normalized)
+     *
+     * @param pos1 Start pos of vector
+     * @param index1
+     * @param pos2 End pos of vector
+     * @param index2
+     * @param resultVec pos2 - pos1
+     * @param resultIndex
+     * @return resultVec
+     */
+    public final static double[] toVector(double[] pos1, int index1, double[] pos2, int index2,
+            double[] resultVec, int resultIndex) {
+        resultVec[resultIndex++] = pos2[index2++] - pos1[index1++];
+        resultVec[resultIndex++] = pos2[index2++] - pos1[index1++];
+        resultVec[resultIndex] = pos2[index2] - pos1[index1];
+        return resultVec;
+    }
+
+    /**
+     * Copies the source vector to destination.
+     *
+     * @param source
+     * @param sIndex
+     * @param dest
+     * @param dIndex
+     */
+    public final static void copy(double[] source, int sIndex, double[] dest, int dIndex) {
+        System.arraycopy(source, sIndex, dest, dIndex, 3);
+    }
+
+    /**
+     * Converts count packed double vectors to float, relative to origin. The origin is subtracted in double
+     * precision before conversion so that positions close to origin (normally the camera) keep float precision.
+     *
+     * @param positions Packed x,y,z positions
+     * @param index Index into positions where first vector is read
+     * @param origin The relative origin, x, y and z
+     * @param originIndex Index into origin
+     * @param dest Packed float destination
+     * @param destIndex Index into dest where first vector is written
+     * @param count Number of vectors to convert
+     */
+    public final static void toFloatRelative(double[] positions, int index, double[] origin, int originIndex,
+            float[] dest, int destIndex, int count) {
+        double ox = origin[originIndex + X];
+        double oy = origin[originIndex + Y];
+        double oz = origin[originIndex + Z];
+        for (int i = 0; i < count; i++) {
+            dest[destIndex++] = (float) (positions[index++] - ox);
+            dest[destIndex++] = (float) (positions[index++] - oy);
+            dest[destIndex++] = (float) (positions[index++] - oz);
+        }
+    }
+
+}
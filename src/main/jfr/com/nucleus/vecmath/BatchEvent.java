@@ -0,0 +1,44 @@
+package com.nucleus.vecmath;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event for a batch operation, only loaded when {@link Instrumentation} is enabled.
+ * This is in a separate source root, that is only compiled on JDK 11 or later, and is looked up reflectively so that
+ * the library does not depend on the jdk.jfr API.
+ *
+ */
+@Name("com.nucleus.vecmath.Batch")
+@Label("Vecmath Batch Operation")
+@Category("Vecmath")
+@Description("Element count and duration of a vecmath batch operation")
+@StackTrace(false)
+class BatchEvent extends Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Count")
+    int count;
+
+    @Label("Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long nanos;
+
+    static void commit(Instrumentation.Operation operation, int count, long nanos) {
+        BatchEvent event = new BatchEvent();
+        if (event.shouldCommit()) {
+            event.operation = operation.name();
+            event.count = count;
+            event.nanos = nanos;
+            event.commit();
+        }
+    }
+
+}